@@ -0,0 +1,61 @@
+package OperationSystem;
+
+/**
+ * AgingPolicy - LRU approximation by aging
+ * Each time a frame is aged its counter shifts right and the page's accessed
+ * bit (which is then cleared) shifts in at the top, so the counter is a
+ * decaying history of recent use. The frame with the lowest counter is evicted.
+ * A cursor sweeps the table, aging a bounded slice of frames per tick, so a
+ * tick holds the frame table for a bounded time however large memory is.
+ */
+public class AgingPolicy implements ReplacementPolicy {
+    private static final int TICKS_PER_SAMPLE = 10;      // Timer ticks a full sweep is spread over
+    private static final int MAX_FRAMES_PER_TICK = 1024; // Longer sweeps take more ticks instead
+
+    private int[] counters;
+    private int cursor; // Next frame to age
+    private int next; // Frame the next search starts at, so ties rotate
+
+    @Override
+    public void init(FrameTable frames) {
+        counters = new int[frames.size()];
+        cursor = 0;
+        next = 0;
+    }
+
+    @Override
+    public void onLoad(FrameTable frames, int frame) {
+        counters[frame] = 1 << 31; // Just used
+    }
+
+    @Override
+    public void onTick(FrameTable frames) {
+        int slice = Math.min(MAX_FRAMES_PER_TICK, (counters.length + TICKS_PER_SAMPLE - 1) / TICKS_PER_SAMPLE);
+        for (int i = 0; i < slice; i++) {
+            int frame = cursor;
+            cursor = frame + 1 < counters.length ? frame + 1 : 0;
+            if (frames.isEvictable(frame)) {
+                int referenced = frames.testAndClearAccessed(frame) ? 1 << 31 : 0;
+                counters[frame] = (counters[frame] >>> 1) | referenced;
+            }
+        }
+    }
+
+    @Override
+    public int selectVictim(FrameTable frames) {
+        int victim = -1;
+        for (int i = 0; i < counters.length; i++) {
+            int frame = (next + i) % counters.length;
+            if (frames.isEvictable(frame)
+                    && (victim == -1 || Integer.compareUnsigned(counters[frame], counters[victim]) < 0)) {
+                victim = frame;
+            }
+        }
+        if (victim != -1) {
+            // Don't pick the same frame forever if eviction fails: count the pick as a use
+            counters[victim] = (counters[victim] >>> 1) | 1 << 31;
+            next = (victim + 1) % counters.length;
+        }
+        return victim;
+    }
+}
@@ -0,0 +1,153 @@
+package OperationSystem;
+
+/**
+ * BuddyAllocator - Binary buddy system over physical page numbers
+ * Hands out naturally aligned blocks of 2^order pages. Freed blocks are
+ * merged with their buddy whenever the buddy is free too. Free lists are
+ * intrusive doubly-linked lists kept in int arrays indexed by page, so
+ * split, coalesce and allocate are O(max order) with no allocation.
+ */
+public class BuddyAllocator {
+    private static final int NONE = -1;
+
+    private final int totalPages;
+    private final int maxOrder;
+    private final int[] freeHeads;   // Head page of the free list for each order
+    private final int[] next;        // Free list links, valid only for free block heads
+    private final int[] prev;
+    private final byte[] freeOrder;  // Order of the free block starting at a page, or NONE
+    private int freePageCount;
+
+    /**
+     * Creates a buddy allocator with every page free
+     * @param totalPages Number of physical pages (need not be a power of two)
+     */
+    public BuddyAllocator(int totalPages) {
+        this.totalPages = totalPages;
+        this.maxOrder = 31 - Integer.numberOfLeadingZeros(totalPages);
+        freeHeads = new int[maxOrder + 1];
+        next = new int[totalPages];
+        prev = new int[totalPages];
+        freeOrder = new byte[totalPages];
+        for (int order = 0; order <= maxOrder; order++) {
+            freeHeads[order] = NONE;
+        }
+        for (int page = 0; page < totalPages; page++) {
+            freeOrder[page] = NONE;
+        }
+
+        // Carve memory into the largest aligned blocks that fit
+        int page = 0;
+        while (page < totalPages) {
+            int order = page == 0 ? maxOrder : Math.min(maxOrder, Integer.numberOfTrailingZeros(page));
+            while (page + (1 << order) > totalPages) {
+                order--;
+            }
+            push(page, order);
+            page += 1 << order;
+        }
+        freePageCount = totalPages;
+    }
+
+    /**
+     * Allocates a block of 2^order contiguous pages aligned to its size
+     * @param order Log2 of the number of pages
+     * @return The first page of the block, or -1 if no block is large enough
+     */
+    public int allocate(int order) {
+        if (order < 0 || order > maxOrder) {
+            return -1;
+        }
+
+        // Find the smallest free block that is big enough
+        int found = order;
+        while (found <= maxOrder && freeHeads[found] == NONE) {
+            found++;
+        }
+        if (found > maxOrder) {
+            return -1;
+        }
+
+        int page = freeHeads[found];
+        unlink(page, found);
+
+        // Split it down, giving back the upper halves
+        while (found > order) {
+            found--;
+            push(page + (1 << found), found);
+        }
+
+        freePageCount -= 1 << order;
+        return page;
+    }
+
+    /**
+     * Returns a block and merges it with its free buddies
+     * @param page The first page of the block
+     * @param order Log2 of the number of pages in the block
+     */
+    public void free(int page, int order) {
+        freePageCount += 1 << order;
+        while (order < maxOrder) {
+            int buddy = page ^ (1 << order);
+            if (buddy >= totalPages || freeOrder[buddy] != order) {
+                break;
+            }
+            unlink(buddy, order);
+            page = Math.min(page, buddy);
+            order++;
+        }
+        push(page, order);
+    }
+
+    /**
+     * Gets the number of free pages
+     * @return The free page count
+     */
+    public int getFreePageCount() {
+        return freePageCount;
+    }
+
+    /**
+     * Gets the largest block order this allocator can hand out
+     * @return The maximum order
+     */
+    public int getMaxOrder() {
+        return maxOrder;
+    }
+
+    /**
+     * Counts the free blocks of one order (for fragmentation statistics)
+     * @param order The block order
+     * @return Number of free blocks of exactly that order
+     */
+    public int countFreeBlocks(int order) {
+        int count = 0;
+        for (int page = freeHeads[order]; page != NONE; page = next[page]) {
+            count++;
+        }
+        return count;
+    }
+
+    private void push(int page, int order) {
+        freeOrder[page] = (byte) order;
+        prev[page] = NONE;
+        next[page] = freeHeads[order];
+        if (freeHeads[order] != NONE) {
+            prev[freeHeads[order]] = page;
+        }
+        freeHeads[order] = page;
+    }
+
+    private void unlink(int page, int order) {
+        if (prev[page] == NONE) {
+            freeHeads[order] = next[page];
+        } else {
+            next[prev[page]] = next[page];
+        }
+        if (next[page] != NONE) {
+            prev[next[page]] = prev[page];
+        }
+        freeOrder[page] = NONE;
+    }
+}
@@ -0,0 +1,58 @@
+package OperationSystem;
+
+/**
+ * BufferPool - Recycles byte arrays in power-of-two size classes
+ * A request is served from the smallest class that fits, so an array may be
+ * longer than asked for. Each class keeps a bounded number of spare arrays;
+ * arrays beyond that, and requests larger than the biggest class, are left
+ * to the garbage collector.
+ */
+public class BufferPool {
+    public static final int MIN_CLASS_SHIFT = 6;  // Smallest class, 64 bytes
+    public static final int MAX_CLASS_SHIFT = 16; // Largest class, 64 KB
+    private static final byte[] EMPTY = new byte[0];
+
+    private final RingBuffer<byte[]>[] classes;
+
+    /**
+     * Creates an empty pool
+     * @param buffersPerClass Most spare arrays kept in each size class
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(int buffersPerClass) {
+        classes = new RingBuffer[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new RingBuffer<>(buffersPerClass);
+        }
+    }
+
+    /**
+     * Gets an array at least as long as asked for
+     * @param length The length needed
+     * @return A spare array of the length's size class, or a new one
+     */
+    public byte[] obtain(int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+        int shift = Math.max(MIN_CLASS_SHIFT, 32 - Integer.numberOfLeadingZeros(length - 1));
+        if (shift > MAX_CLASS_SHIFT) {
+            return new byte[length];
+        }
+        byte[] buffer = classes[shift - MIN_CLASS_SHIFT].poll();
+        return buffer != null ? buffer : new byte[1 << shift];
+    }
+
+    /**
+     * Returns an array for reuse; the caller must not use it afterwards
+     * Arrays that are not exactly a class size are dropped
+     * @param buffer The array
+     */
+    public void release(byte[] buffer) {
+        int length = buffer.length;
+        if (Integer.bitCount(length) != 1 || length < 1 << MIN_CLASS_SHIFT || length > 1 << MAX_CLASS_SHIFT) {
+            return;
+        }
+        classes[Integer.numberOfTrailingZeros(length) - MIN_CLASS_SHIFT].offer(buffer);
+    }
+}
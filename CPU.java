@@ -0,0 +1,196 @@
+package OperationSystem;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CPU - One simulated processor
+ * Owns a run queue, the process it is running and its own TLB.
+ * TLB entries are tagged with the PID, so switches don't flush it.
+ * Other CPUs hand it woken processes through a lock-free inbox.
+ */
+public class CPU {
+    private final int id;
+    private final RunQueue runQueue; // Guarded by this
+    private final ConcurrentLinkedQueue<PCB> wakeups; // Woken processes not yet in runQueue
+    private final AtomicInteger pendingWakeups;
+    private final TLB tlb;
+    private final long[] quantumNanos; // Shared with the kernel, indexed by priority
+    private volatile PCB current;
+
+    // Time slice of the current process
+    private volatile long quantumDeadline;
+    private volatile boolean quantumArmed;
+    private volatile boolean quantumExpired;
+
+    // Batch of a swap read-ahead by the process running here, so faults don't allocate
+    final int[] readAheadPages = new int[FaultPattern.MAX_WINDOW + 1];
+    final int[] readAheadFrames = new int[FaultPattern.MAX_WINDOW + 1];
+    final int[] readAheadSlots = new int[FaultPattern.MAX_WINDOW + 1];
+    final int[] readAheadOffsets = new int[FaultPattern.MAX_WINDOW + 1];
+
+    public CPU(int id, long[] quantumNanos) {
+        this(id, quantumNanos, new TLB());
+    }
+
+    public CPU(int id, long[] quantumNanos, TLB tlb) {
+        this.id = id;
+        this.runQueue = new RunQueue();
+        this.wakeups = new ConcurrentLinkedQueue<>();
+        this.pendingWakeups = new AtomicInteger();
+        this.tlb = tlb;
+        this.quantumNanos = quantumNanos;
+        this.current = null;
+        this.quantumArmed = false;
+        this.quantumExpired = false;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public TLB getTLB() {
+        return tlb;
+    }
+
+    /**
+     * Gets the process running on this CPU
+     * @return The current process, or null if idle
+     */
+    public PCB getCurrent() {
+        return current;
+    }
+
+    public boolean isIdle() {
+        return current == null;
+    }
+
+    /**
+     * Approximate number of processes waiting for this CPU
+     * @return Queued plus pending wakeups
+     */
+    public int load() {
+        return runQueue.size() + pendingWakeups.get();
+    }
+
+    /**
+     * Makes a process runnable on this CPU; safe to call from any thread without locking
+     * @param pcb The process to wake
+     */
+    public void wake(PCB pcb) {
+        pcb.setCpu(this);
+        pendingWakeups.incrementAndGet();
+        wakeups.offer(pcb);
+    }
+
+    /**
+     * Switch point for the running process: picks the next process for this CPU
+     * @param keepCurrent true to requeue the current process, false if it blocked or exited
+     * @return The process that should run next, or null if the CPU goes idle
+     */
+    public synchronized PCB reschedule(boolean keepCurrent) {
+        drainWakeups();
+
+        if (keepCurrent && current != null) {
+            runQueue.enqueue(current);
+        }
+        tlb.endAccess(); // The leaving process is at a kernel entry, not mid-access
+        current = runQueue.dequeue();
+        armQuantum();
+        return current;
+    }
+
+    /**
+     * Picks a process only if the CPU is currently idle
+     * @return The newly dispatched process, or null if busy or nothing to run
+     */
+    public synchronized PCB dispatchIfIdle() {
+        if (current != null) {
+            return null;
+        }
+        return reschedule(false);
+    }
+
+    /**
+     * Hands this CPU straight to another process, without queueing the current one
+     * The access under way stays marked in use, for the current process to finish
+     * when it gets the CPU back (lending the CPU to the page-out daemon)
+     * @param pcb The process to run, in no run queue
+     * @return The process
+     */
+    public synchronized PCB switchTo(PCB pcb) {
+        current = pcb;
+        armQuantum();
+        return pcb;
+    }
+
+    /**
+     * Gives away the best waiting process to another CPU (work stealing)
+     * @return A runnable process, or null if none is waiting
+     */
+    public synchronized PCB steal() {
+        drainWakeups();
+        return runQueue.dequeue();
+    }
+
+    /**
+     * Runs a process stolen from another CPU
+     * @param pcb The stolen process
+     * @return true if it was dispatched, false if this CPU got busy meanwhile and queued it instead
+     */
+    public synchronized boolean dispatchStolen(PCB pcb) {
+        pcb.setCpu(this);
+        if (current != null) {
+            runQueue.enqueue(pcb);
+            return false;
+        }
+        tlb.endAccess();
+        current = pcb;
+        armQuantum();
+        return true;
+    }
+
+    /**
+     * Timer interrupt - flags the running process once its quantum is used up
+     * @param now The current System.nanoTime() value
+     */
+    public void onTimerTick(long now) {
+        if (quantumArmed && !quantumExpired && now - quantumDeadline >= 0) {
+            quantumExpired = true;
+        }
+    }
+
+    /**
+     * Consumes a pending quantum expiry
+     * @return true if the current process's time slice ran out
+     */
+    public boolean takeQuantumExpired() {
+        if (!quantumExpired) {
+            return false;
+        }
+        quantumExpired = false;
+        return true;
+    }
+
+    private void drainWakeups() {
+        PCB pcb;
+        while ((pcb = wakeups.poll()) != null) {
+            pendingWakeups.decrementAndGet();
+            runQueue.enqueue(pcb);
+        }
+    }
+
+    /**
+     * Starts a fresh time slice for the current process
+     */
+    private void armQuantum() {
+        quantumExpired = false;
+        if (current != null) {
+            current.setCpu(this);
+            quantumDeadline = System.nanoTime() + quantumNanos[current.getPriority().ordinal()];
+            quantumArmed = true;
+        } else {
+            quantumArmed = false;
+        }
+    }
+}
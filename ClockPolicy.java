@@ -0,0 +1,39 @@
+package OperationSystem;
+
+/**
+ * ClockPolicy - CLOCK page replacement
+ * A hand sweeps the frames in physical order. A frame whose page was
+ * accessed since the last sweep has its accessed bit cleared and is passed
+ * over; the first one that was not accessed is evicted.
+ */
+public class ClockPolicy implements ReplacementPolicy {
+    private int hand;
+
+    @Override
+    public void init(FrameTable frames) {
+        hand = 0;
+    }
+
+    @Override
+    public int selectVictim(FrameTable frames) {
+        // Two full turns: the first may only clear accessed bits
+        int size = frames.size();
+        for (int step = 0; step < 2 * size; step++) {
+            int frame = hand;
+            hand = hand + 1 == size ? 0 : hand + 1;
+            if (frames.isEvictable(frame) && !frames.testAndClearAccessed(frame)) {
+                return frame;
+            }
+        }
+
+        // Every page is in constant use (or locked); take whatever the hand is on
+        for (int step = 0; step < size; step++) {
+            int frame = hand;
+            hand = hand + 1 == size ? 0 : hand + 1;
+            if (frames.isEvictable(frame)) {
+                return frame;
+            }
+        }
+        return -1;
+    }
+}
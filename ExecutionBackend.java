@@ -0,0 +1,29 @@
+package OperationSystem;
+
+/**
+ * ExecutionBackend interface - Decides what kind of Java thread runs each process
+ */
+public interface ExecutionBackend {
+    /**
+     * Creates an unstarted thread for a process
+     * @param body The code the thread should run
+     * @param name Name for the thread
+     * @return The new, unstarted thread
+     */
+    Thread newThread(Runnable body, String name);
+
+    /**
+     * Looks up a backend by name ("platform" or "virtual")
+     * @param name The backend name
+     * @return The backend
+     */
+    static ExecutionBackend forName(String name) {
+        if ("virtual".equalsIgnoreCase(name)) {
+            return new VirtualThreadBackend();
+        }
+        if ("platform".equalsIgnoreCase(name)) {
+            return new PlatformThreadBackend();
+        }
+        throw new IllegalArgumentException("Unknown execution backend: " + name);
+    }
+}
@@ -0,0 +1,64 @@
+package OperationSystem;
+
+/**
+ * FaultPattern - Detects sequential and strided swap faults in one process
+ * A stride is trusted once two faults in a row are the same distance apart.
+ * The read-ahead window then starts small and doubles with each fault that
+ * continues the pattern, and is halved whenever a page read ahead is evicted
+ * unused, so it settles where read-ahead pays off. Pages read ahead count as
+ * faulted, so the fault after a window still continues the pattern.
+ */
+public class FaultPattern {
+    public static final int MAX_STRIDE = 16; // Farther jumps are treated as random
+    public static final int MAX_WINDOW = 256; // Most pages one fault may read ahead
+    private static final int INITIAL_WINDOW = 2;
+
+    private int lastPage = -1; // Last page faulted or read ahead, -1 before the first fault
+    private int stride;        // Distance between the last two faults
+    private int window;        // Pages to read ahead, 0 until the stride is trusted
+
+    /**
+     * Records a fault and sizes the read-ahead for it
+     * @param page The faulting virtual page
+     * @param maxWindow The largest window allowed (0 disables read-ahead)
+     * @return The number of pages to read ahead along the stride
+     */
+    public int recordFault(int page, int maxWindow) {
+        int delta = page - lastPage;
+        if (delta == 0) {
+            return 0; // Refault of a page evicted right away
+        }
+        if (lastPage != -1 && delta == stride && Math.abs(delta) <= MAX_STRIDE) {
+            window = window == 0 ? INITIAL_WINDOW : window * 2;
+        } else {
+            stride = lastPage != -1 ? delta : 0;
+            window = 0;
+        }
+        window = Math.min(window, maxWindow);
+        lastPage = page;
+        return window;
+    }
+
+    /**
+     * Notes how far read-ahead got along the stride
+     * @param page The last page read ahead, or skipped because it was already in memory
+     */
+    public void readAhead(int page) {
+        lastPage = page;
+    }
+
+    /**
+     * Notes that a page read ahead was evicted before it was used
+     */
+    public void wasted() {
+        window /= 2;
+    }
+
+    /**
+     * Gets the distance between the last two faults
+     * @return The stride in pages
+     */
+    public int getStride() {
+        return stride;
+    }
+}
@@ -0,0 +1,143 @@
+package OperationSystem;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+
+/**
+ * FileSwapDevice - Swap file accessed with seek, read and write calls
+ * Every page costs a seek and a read or write system call, except that a
+ * batch of pages in consecutive slots is moved with one write or read. Kept
+ * as the simple alternative to MappedSwapDevice.
+ */
+public class FileSwapDevice implements SwapDevice {
+    private final RandomAccessFile file;
+    private final int pageSize;
+    private byte[] buffer = new byte[0]; // Gathers or scatters batched pages, guarded by this
+
+    /**
+     * Opens the swap file
+     * @param path Path of the swap file (created, or emptied if it exists)
+     * @param pageSize Bytes per slot
+     */
+    public FileSwapDevice(String path, int pageSize) {
+        this.pageSize = pageSize;
+        try {
+            file = new RandomAccessFile(path, "rw");
+            file.setLength(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open swap file " + path, e);
+        }
+    }
+
+    @Override
+    public synchronized void writePage(int slot, byte[] memory, int offset) {
+        try {
+            file.seek((long) slot * pageSize);
+            file.write(memory, offset, pageSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Swap write failed at slot " + slot, e);
+        }
+    }
+
+    /**
+     * Writes each run of consecutive slots with a single seek and write
+     */
+    @Override
+    public synchronized void writePages(int[] slots, int[] offsets, int count, byte[] memory) {
+        int start = 0;
+        while (start < count) {
+            int end = endOfRun(slots, start, count);
+            if (end - start == 1) {
+                writePage(slots[start], memory, offsets[start]);
+            } else {
+                // Gather the run into one buffer
+                byte[] run = runBuffer(end - start);
+                for (int i = start; i < end; i++) {
+                    System.arraycopy(memory, offsets[i], run, (i - start) * pageSize, pageSize);
+                }
+                try {
+                    file.seek((long) slots[start] * pageSize);
+                    file.write(run, 0, (end - start) * pageSize);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Swap write failed at slot " + slots[start], e);
+                }
+            }
+            start = end;
+        }
+    }
+
+    @Override
+    public synchronized void readPage(int slot, byte[] memory, int offset) {
+        try {
+            file.seek((long) slot * pageSize);
+            file.readFully(memory, offset, pageSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Swap read failed at slot " + slot, e);
+        }
+    }
+
+    /**
+     * Reads each run of consecutive slots with a single seek and read
+     */
+    @Override
+    public synchronized void readPages(int[] slots, int[] offsets, int count, byte[] memory) {
+        int start = 0;
+        while (start < count) {
+            int end = endOfRun(slots, start, count);
+            if (end - start == 1) {
+                readPage(slots[start], memory, offsets[start]);
+            } else {
+                byte[] run = runBuffer(end - start);
+                try {
+                    file.seek((long) slots[start] * pageSize);
+                    file.readFully(run, 0, (end - start) * pageSize);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Swap read failed at slot " + slots[start], e);
+                }
+
+                // Scatter the run to its pages
+                for (int i = start; i < end; i++) {
+                    System.arraycopy(run, (i - start) * pageSize, memory, offsets[i], pageSize);
+                }
+            }
+            start = end;
+        }
+    }
+
+    @Override
+    public synchronized void force() {
+        try {
+            file.getChannel().force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Swap sync failed", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Finds where the run of consecutive slots starting at start ends
+    private static int endOfRun(int[] slots, int start, int count) {
+        int end = start + 1;
+        while (end < count && slots[end] == slots[end - 1] + 1) {
+            end++;
+        }
+        return end;
+    }
+
+    // Gets the batch buffer, grown to hold a run of pages
+    private byte[] runBuffer(int pages) {
+        int length = pages * pageSize;
+        if (buffer.length < length) {
+            buffer = new byte[length];
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,121 @@
+package OperationSystem;
+
+/**
+ * ForkTest - Forks a process and checks that parent and child see their own
+ * copies of memory they share copy-on-write, and that once the child is gone
+ * the parent owns every page outright again, so they can be swapped out
+ */
+public class ForkTest implements Runnable {
+    private static final int PAGES = 16;
+    private static final int WAIT_MILLIS = 10;
+    private static final int WAIT_TRIES = 100;
+
+    @Override
+    public void run() {
+        System.out.println("ForkTest: Starting fork test...");
+        Process process = new Process(this);
+        int pageSize = OS.getPageSize();
+
+        try {
+            int address = OS.allocateMemory(PAGES * pageSize);
+            if (address == -1) {
+                System.out.println("ForkTest: Failed to allocate memory");
+                return;
+            }
+            for (int i = 0; i < PAGES; i++) {
+                process.writeInt(address + i * pageSize, i);
+            }
+            int resident = OS.getResidentPages();
+            System.out.println("ForkTest: Parent has " + resident + " pages in memory");
+
+            // Forking shares the pages instead of copying them
+            int child = OS.fork(new Child(OS.getPid(), address));
+            if (child == -1) {
+                System.out.println("ForkTest: ERROR - Fork failed");
+                return;
+            }
+            System.out.println("ForkTest: Forked child " + child + ", parent now owns "
+                    + OS.getResidentPages() + " pages outright");
+
+            // The child writes half the pages and reports back before it exits
+            KernelMessage report = OS.waitForMessage();
+            if (report == null || report.getWhat() != 0) {
+                System.out.println("ForkTest: ERROR - Child saw wrong values in "
+                        + (report != null ? report.getWhat() : -1) + " pages");
+            }
+            if (report != null) {
+                report.recycle();
+            }
+            for (int i = 0; i < PAGES; i++) {
+                int value = process.readInt(address + i * pageSize);
+                if (value != i) {
+                    System.out.println("ForkTest: ERROR - Parent sees child's write " + value + " in page " + i);
+                }
+            }
+
+            // With the child gone, every shared page is the parent's alone again
+            for (int tries = 0; tries < WAIT_TRIES && OS.getResidentPages() != resident; tries++) {
+                OS.sleep(WAIT_MILLIS);
+            }
+            System.out.println("ForkTest: Child exited, parent owns " + OS.getResidentPages() + " pages outright");
+            if (OS.getResidentPages() != resident) {
+                System.out.println("ForkTest: ERROR - Only " + OS.getResidentPages() + " of " + resident
+                        + " pages can be swapped out again");
+            }
+
+            // And writing them needs no copy
+            long copies = OS.getCopyOnWriteCopies();
+            for (int i = 0; i < PAGES; i++) {
+                process.writeInt(address + i * pageSize, -i);
+            }
+            if (OS.getCopyOnWriteCopies() != copies) {
+                System.out.println("ForkTest: ERROR - Parent copied " + (OS.getCopyOnWriteCopies() - copies)
+                        + " pages nobody else shares");
+            }
+
+            OS.freeMemory(address, PAGES * pageSize);
+        } catch (MemoryAccessException e) {
+            System.out.println("ForkTest: Exception: " + e.getMessage());
+        }
+
+        System.out.println("ForkTest: Fork test complete");
+    }
+
+    /**
+     * Checks it sees the parent's memory, writes half of it and reports the pages it found wrong
+     */
+    private static class Child implements Runnable {
+        private final int parentPid;
+        private final int address;
+
+        Child(int parentPid, int address) {
+            this.parentPid = parentPid;
+            this.address = address;
+        }
+
+        @Override
+        public void run() {
+            Process process = new Process(this);
+            int pageSize = OS.getPageSize();
+            int wrong = 0;
+            try {
+                for (int i = 0; i < PAGES; i++) {
+                    if (process.readInt(address + i * pageSize) != i) {
+                        wrong++;
+                    }
+                }
+                for (int i = 0; i < PAGES; i += 2) {
+                    process.writeInt(address + i * pageSize, 1000 + i);
+                }
+                for (int i = 0; i < PAGES; i++) {
+                    if (process.readInt(address + i * pageSize) != (i % 2 == 0 ? 1000 + i : i)) {
+                        wrong++;
+                    }
+                }
+            } catch (MemoryAccessException e) {
+                wrong = PAGES;
+            }
+            OS.sendMessage(parentPid, wrong, new byte[1], 0, 1);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package OperationSystem;
+
+/**
+ * FrameTable - Global table of physical frames in use, indexed by frame
+ * Reverse-maps each frame to the process and virtual page it backs, so the
+ * replacement policy can reach a frame's page table entry directly, and
+ * drives the policy as frames are filled and released. Each process's
+ * frames are also chained into a list, so tearing a process down and
+ * counting its resident pages never scan a page table. Pinned frames
+ * (huge pages) are tracked but never offered to the policy.
+ */
+public class FrameTable {
+    private static final int NONE = -1;
+
+    private final PCB[] owners;       // Process whose page is in the frame, null if free
+    private final int[] virtualPages; // Virtual page in the owner's address space
+    private final boolean[] pinned;   // Frame may not be evicted
+    private final int[] ownerNext;    // Links of the owner's frame list
+    private final int[] ownerPrev;
+    private int usedFrames;
+    private int pinnedFrames;
+    private final CPU[] cpus;         // For shooting down TLB entries when the accessed bit is cleared
+    private ReplacementPolicy policy;
+
+    /**
+     * Creates a frame table with no frames in use
+     * @param frames Number of physical frames
+     * @param cpus CPUs whose TLBs cache translations to these frames
+     * @param policy Decides which frame to evict
+     */
+    public FrameTable(int frames, CPU[] cpus, ReplacementPolicy policy) {
+        this.owners = new PCB[frames];
+        this.virtualPages = new int[frames];
+        this.pinned = new boolean[frames];
+        this.ownerNext = new int[frames];
+        this.ownerPrev = new int[frames];
+        this.cpus = cpus;
+        this.policy = policy;
+        policy.init(this);
+    }
+
+    /**
+     * Records that a frame now holds a process's swappable page
+     * Also unpins a frame that was pinned (when a huge page is split)
+     * @param frame The physical frame
+     * @param owner The owning process
+     * @param virtualPage The virtual page it backs
+     */
+    public synchronized void assign(int frame, PCB owner, int virtualPage) {
+        boolean wasEvictable = owners[frame] != null && !pinned[frame];
+        setOwner(frame, owner, virtualPage);
+        if (pinned[frame]) {
+            pinned[frame] = false;
+            pinnedFrames--;
+        }
+        if (!wasEvictable) {
+            policy.onLoad(this, frame);
+        }
+    }
+
+    /**
+     * Records that a frame now holds a page that must stay in memory
+     * @param frame The physical frame
+     * @param owner The owning process
+     * @param virtualPage The virtual page it backs
+     */
+    public synchronized void assignPinned(int frame, PCB owner, int virtualPage) {
+        if (owners[frame] != null && !pinned[frame]) {
+            policy.onFree(this, frame);
+        }
+        setOwner(frame, owner, virtualPage);
+        if (!pinned[frame]) {
+            pinned[frame] = true;
+            pinnedFrames++;
+        }
+    }
+
+    /**
+     * Records that a frame no longer holds a page
+     * @param frame The physical frame
+     */
+    public synchronized void release(int frame) {
+        PCB owner = owners[frame];
+        if (owner == null) {
+            return;
+        }
+        unlink(frame, owner);
+        owners[frame] = null;
+        usedFrames--;
+        if (pinned[frame]) {
+            pinned[frame] = false;
+            pinnedFrames--;
+        } else {
+            policy.onFree(this, frame);
+        }
+    }
+
+    /**
+     * Releases every frame of a process (when it exits)
+     * Walks only that process's frames, not its page table
+     * @param owner The process
+     * @return The frames that were released
+     */
+    public synchronized int[] releaseAll(PCB owner) {
+        int[] frames = new int[owner.residentFrames];
+        int count = 0;
+        while (owner.firstFrame != NONE) {
+            int frame = owner.firstFrame;
+            frames[count++] = frame;
+            release(frame);
+        }
+        return frames;
+    }
+
+    /**
+     * Asks the replacement policy for a frame to evict
+     * The frame stays assigned until the caller has unmapped it and calls release
+     * @return A frame with an owner, or -1 if no frame can be evicted
+     */
+    public synchronized int selectVictim() {
+        return policy.selectVictim(this);
+    }
+
+    /**
+     * Periodic hook for policies that sample accessed bits over time
+     */
+    public synchronized void tick() {
+        policy.onTick(this);
+    }
+
+    /**
+     * Replaces the replacement policy, seeding it with the frames in use
+     * @param newPolicy The new policy
+     */
+    public synchronized void setPolicy(ReplacementPolicy newPolicy) {
+        policy = newPolicy;
+        newPolicy.init(this);
+        for (int frame = 0; frame < owners.length; frame++) {
+            if (owners[frame] != null && !pinned[frame]) {
+                newPolicy.onLoad(this, frame);
+            }
+        }
+    }
+
+    public synchronized ReplacementPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Gets the owner of a frame
+     * @param frame The physical frame
+     * @return The owning process, or null if the frame is free
+     */
+    public synchronized PCB getOwner(int frame) {
+        return owners[frame];
+    }
+
+    /**
+     * Gets the virtual page a frame backs
+     * @param frame The physical frame
+     * @return The virtual page number, meaningful only while the frame has an owner
+     */
+    public synchronized int getVirtualPage(int frame) {
+        return virtualPages[frame];
+    }
+
+    /**
+     * Gets the PID of a frame's owner
+     * @param frame The physical frame
+     * @return The owning process's PID, or -1 if the frame is free
+     */
+    public synchronized int getOwnerPid(int frame) {
+        return owners[frame] != null ? owners[frame].getPid() : -1;
+    }
+
+    /**
+     * Checks if a frame holds a page that may be evicted
+     * @param frame The physical frame
+     * @return true if the frame has an owner and is not pinned
+     */
+    public synchronized boolean isEvictable(int frame) {
+        return owners[frame] != null && !pinned[frame];
+    }
+
+    /**
+     * Gets the number of frames a process has in memory
+     * @param owner The process
+     * @return The resident frame count, pinned frames included
+     */
+    public synchronized int getResidentFrames(PCB owner) {
+        return owner.residentFrames;
+    }
+
+    /**
+     * Gets the number of frames holding a page
+     * @return The used frame count
+     */
+    public synchronized int getUsedFrames() {
+        return usedFrames;
+    }
+
+    /**
+     * Gets the number of frames that may not be evicted
+     * @return The pinned frame count
+     */
+    public synchronized int getPinnedFrames() {
+        return pinnedFrames;
+    }
+
+    /**
+     * Gets the number of frames
+     * @return The frame count
+     */
+    public int size() {
+        return owners.length;
+    }
+
+    /**
+     * Reads and clears the accessed bit of the page in a frame
+     * The page's TLB entries are dropped too, so its next use sets the bit again.
+     * If the owner's page table is busy the page is reported as accessed.
+     * @param frame The physical frame
+     * @return true if the page was accessed since the bit was last cleared
+     */
+    public synchronized boolean testAndClearAccessed(int frame) {
+        PCB owner = owners[frame];
+        if (owner == null) {
+            return false;
+        }
+        int virtualPage = virtualPages[frame];
+
+        // Never wait here: the lock holder may be waiting for this table
+        if (!owner.getPageTableLock().tryLock()) {
+            return true;
+        }
+        try {
+            long pte = owner.getPte(virtualPage);
+            if (PageTable.frameOf(pte) != frame || (pte & PageTable.ACCESSED) == 0) {
+                return false;
+            }
+            owner.setPte(virtualPage, pte & ~PageTable.ACCESSED);
+        } finally {
+            owner.getPageTableLock().unlock();
+        }
+        for (CPU cpu : cpus) {
+            cpu.getTLB().invalidate(owner.getPid(), virtualPage);
+        }
+        return true;
+    }
+
+    // Points a frame at a page, moving it to the new owner's list if needed
+    private void setOwner(int frame, PCB owner, int virtualPage) {
+        PCB previous = owners[frame];
+        if (previous != owner) {
+            if (previous != null) {
+                unlink(frame, previous);
+            } else {
+                usedFrames++;
+            }
+            owners[frame] = owner;
+            link(frame, owner);
+        }
+        virtualPages[frame] = virtualPage;
+    }
+
+    private void link(int frame, PCB owner) {
+        ownerPrev[frame] = NONE;
+        ownerNext[frame] = owner.firstFrame;
+        if (owner.firstFrame != NONE) {
+            ownerPrev[owner.firstFrame] = frame;
+        }
+        owner.firstFrame = frame;
+        owner.residentFrames++;
+    }
+
+    private void unlink(int frame, PCB owner) {
+        if (ownerPrev[frame] != NONE) {
+            ownerNext[ownerPrev[frame]] = ownerNext[frame];
+        } else {
+            owner.firstFrame = ownerNext[frame];
+        }
+        if (ownerNext[frame] != NONE) {
+            ownerPrev[ownerNext[frame]] = ownerPrev[frame];
+        }
+        owner.residentFrames--;
+    }
+}
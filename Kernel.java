@@ -1,52 +1,606 @@
 package OperationSystem;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.time.Clock;
+import java.util.Queue;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Kernel class - Core operating system functionality
  * Handles task scheduling and process management
  */
 public class Kernel {
-    private List<PCB> realtimeProcesses;
-    private List<PCB> interactiveProcesses;
-    private List<PCB> backgroundProcesses;
-    private List<PCB> sleepingProcesses;
+    private CPU[] cpus;
+    private AtomicInteger nextCpu; // Round-robin placement of new processes
+    private SleepQueue sleepingProcesses; // Guarded by itself
     private Map<Integer, PCB> processMap; // PID -> PCB mapping
-    private Map<Integer, PCB> waitingForMessageProcesses; // Processes waiting for messages
-    private PCB currentProcess;
-    private Random random;
     private VFS vfs;
     private MemoryManager memoryManager;
-    private int swapFileId;
-    private int nextSwapPage;
+    private MemoryGeometry geometry;
+    private FrameTable frameTable; // Owner of each swappable frame, drives page replacement
+    private final AtomicLong majorFaults = new AtomicLong();
+    private final AtomicLong pageOuts = new AtomicLong();
+    private final AtomicLong cleanEvictions = new AtomicLong();
+    private ExecutionBackend executionBackend;
+    static final String SWAP_FILE = "pagefile.sys";
+    private volatile SwapDevice swapDevice; // Backing store the swap slots live in
+    private SwapSpace swapSpace; // Which swap file slots hold a page
+    private final Map<String, SharedMemorySegment> sharedSegments = new HashMap<>(); // Name -> segment, guarded by itself
+    private int segmentFrames; // Frames held by shared memory segments, guarded by frameTable
+    
+    // Page-out daemon, started the first time free frames run low
+    private volatile PCB pageOutDaemon;
+    private final AtomicBoolean pageOutDaemonStarted = new AtomicBoolean();
+    private final AtomicBoolean pageOutDaemonIdle = new AtomicBoolean(); // Parked until given a CPU
+    private volatile PCB pageOutDonor;         // Process that lent the daemon its CPU, if any
+    private volatile int pageOutLowWatermark;  // Faults lend the daemon a CPU below this many free frames
+    private volatile int pageOutHighWatermark; // It reclaims until this many are free
+    private volatile int pageOutBatchSize;     // Pages per batch write
+    private PCB[] batchOwners;                 // Batch being written, used only by the daemon
+    private int[] batchFrames;
+    private int[] batchSlots;
+    private int[] batchOffsets;
+    private final AtomicLong daemonPageOuts = new AtomicLong();
+    private final AtomicLong pageOutBatches = new AtomicLong();
+    private final AtomicLong daemonWakeups = new AtomicLong();
+    private final AtomicLong directReclaims = new AtomicLong();
+    
+    // Read-ahead of swapped-out pages along each process's fault pattern
+    private volatile int readAheadMax; // Largest window in pages, 0 disables it
+    private final AtomicLong prefetchedPages = new AtomicLong();
+    private final AtomicLong prefetchHits = new AtomicLong();
+    private final AtomicLong prefetchWasted = new AtomicLong();
+    private final AtomicLong copyOnWriteCopies = new AtomicLong();
+    private final Queue<Long> soleSharedFrames = new ConcurrentLinkedQueue<>(); // Copy-on-write frames down to one sharer, as frame << 32 | page
+    
+    // Message passing through bounded mailboxes, with recycled messages
+    private final MessagePool messagePool = new MessagePool(MESSAGE_POOL_SIZE, BUFFERS_PER_CLASS);
+    private volatile int mailboxSize = PCB.DEFAULT_MAILBOX_SIZE; // For processes created from now on
+    private volatile MailboxPolicy mailboxPolicy = MailboxPolicy.BLOCK;
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong blockedSends = new AtomicLong();
+    
+    // Preemptive scheduling
+    private static final int TIMER_TICK_MILLIS = 1;
+    private static final int SWAP_OUT_ROUNDS = 16; // Tries for a frame before a fault fails with out of memory
+    private static final long SWAP_OUT_BACKOFF_NANOS = 200_000;
+    private static final long SHOOTDOWN_WAIT_NANOS = 50_000; // Longest wait for an access through an unmapped page
+    private static final int PAGE_OUT_BATCH = 16;
+    private static final int READ_AHEAD_MAX = 32;
+    private static final int MESSAGE_POOL_SIZE = 1024; // Spare messages kept for reuse
+    private static final int BUFFERS_PER_CLASS = 64;   // Spare data arrays kept per size class
+    private long[] quantumNanos; // Time slice per priority level
+    private Timer schedulerTimer;
 
     public Kernel() {
-        realtimeProcesses = new ArrayList<>();
-        interactiveProcesses = new ArrayList<>();
-        backgroundProcesses = new ArrayList<>();
-        sleepingProcesses = new ArrayList<>();
-        processMap = new HashMap<>();
-        waitingForMessageProcesses = new HashMap<>();
-        currentProcess = null;
-        random = new Random();
+        this(new PlatformThreadBackend());
+    }
+    
+    /**
+     * Creates a single-CPU kernel whose processes run on the given execution backend
+     * @param executionBackend Platform threads, virtual threads, etc.
+     */
+    public Kernel(ExecutionBackend executionBackend) {
+        this(executionBackend, 1);
+    }
+    
+    /**
+     * Creates an SMP kernel
+     * @param executionBackend Platform threads, virtual threads, etc.
+     * @param cpuCount Number of simulated CPUs
+     */
+    public Kernel(ExecutionBackend executionBackend, int cpuCount) {
+        this(executionBackend, cpuCount, TLB.DEFAULT_SETS, TLB.DEFAULT_WAYS);
+    }
+    
+    /**
+     * Creates an SMP kernel with a custom TLB size
+     * @param executionBackend Platform threads, virtual threads, etc.
+     * @param cpuCount Number of simulated CPUs
+     * @param tlbSets Sets per CPU TLB (power of two)
+     * @param tlbWays Entries per TLB set
+     */
+    public Kernel(ExecutionBackend executionBackend, int cpuCount, int tlbSets, int tlbWays) {
+        this(executionBackend, cpuCount, tlbSets, tlbWays, new MemoryGeometry());
+    }
+    
+    /**
+     * Creates an SMP kernel with a custom memory geometry
+     * @param executionBackend Platform threads, virtual threads, etc.
+     * @param cpuCount Number of simulated CPUs
+     * @param geometry Page size, physical memory size and address space size
+     */
+    public Kernel(ExecutionBackend executionBackend, int cpuCount, MemoryGeometry geometry) {
+        this(executionBackend, cpuCount, TLB.DEFAULT_SETS, TLB.DEFAULT_WAYS, geometry);
+    }
+    
+    /**
+     * Creates an SMP kernel with a custom TLB size and memory geometry
+     * @param executionBackend Platform threads, virtual threads, etc.
+     * @param cpuCount Number of simulated CPUs
+     * @param tlbSets Sets per CPU TLB (power of two)
+     * @param tlbWays Entries per TLB set
+     * @param geometry Page size, physical memory size and address space size
+     */
+    public Kernel(ExecutionBackend executionBackend, int cpuCount, int tlbSets, int tlbWays, MemoryGeometry geometry) {
+        if (cpuCount <= 0) {
+            throw new IllegalArgumentException("CPU count must be positive");
+        }
+        this.executionBackend = executionBackend;
+        this.geometry = geometry;
+        Process.setGeometry(geometry);
+        sleepingProcesses = new SleepQueue();
+        processMap = new ConcurrentHashMap<>();
         vfs = new VFS();
-        memoryManager = new MemoryManager();
+        memoryManager = new MemoryManager(geometry.getPhysicalPages()); // Bitmap allocator until huge pages are enabled
         
         // Open swap file
-        swapFileId = vfs.Open("pagefile.sys");
-        if (swapFileId == -1) {
-            // If the file doesn't exist, create it
-            int tempId = vfs.Open("pagefile.sys:create");
-            if (tempId != -1) {
-                vfs.Close(tempId);
-                swapFileId = vfs.Open("pagefile.sys");
+        swapDevice = SwapDevice.forName("mapped", SWAP_FILE, geometry.getPageSize());
+        // Slot offsets are int byte positions in the file
+        swapSpace = new SwapSpace(Math.min(PageTable.MAX_SWAP_SLOTS, Integer.MAX_VALUE / geometry.getPageSize()));
+        
+        // Default time slices: higher priorities get shorter, more frequent turns
+        quantumNanos = new long[Priority.values().length];
+        setQuantum(Priority.REALTIME, 10);
+        setQuantum(Priority.INTERACTIVE, 50);
+        setQuantum(Priority.BACKGROUND, 100);
+        
+        cpus = new CPU[cpuCount];
+        for (int i = 0; i < cpuCount; i++) {
+            cpus[i] = new CPU(i, quantumNanos, new TLB(tlbSets, tlbWays));
+        }
+        nextCpu = new AtomicInteger();
+        frameTable = new FrameTable(geometry.getPhysicalPages(), cpus, new ClockPolicy());
+        
+        // Keep a small reserve of free frames: wake the daemon below 1/16 of memory, refill to 1/8
+        int frames = geometry.getPhysicalPages();
+        setPageOutWatermarks(Math.min(frames, Math.max(2, frames / 16)), Math.min(frames, Math.max(4, frames / 8)));
+        setPageOutBatchSize(PAGE_OUT_BATCH);
+        setReadAheadMax(READ_AHEAD_MAX);
+        
+        // The timer thread plays the role of the hardware clock interrupt:
+        // it only raises flags, the switch happens at the next kernel entry
+        schedulerTimer = new Timer("scheduler-timer", true);
+        schedulerTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                onTimerTick();
             }
+        }, TIMER_TICK_MILLIS, TIMER_TICK_MILLIS);
+    }
+    
+    /**
+     * Sets the time slice for a priority level
+     * @param priority The priority level
+     * @param milliseconds Time slice in milliseconds
+     */
+    public void setQuantum(Priority priority, int milliseconds) {
+        if (milliseconds <= 0) {
+            throw new IllegalArgumentException("Quantum must be positive");
+        }
+        quantumNanos[priority.ordinal()] = milliseconds * 1_000_000L;
+    }
+    
+    /**
+     * Gets the time slice for a priority level
+     * @param priority The priority level
+     * @return Time slice in milliseconds
+     */
+    public int getQuantum(Priority priority) {
+        return (int) (quantumNanos[priority.ordinal()] / 1_000_000L);
+    }
+    
+    /**
+     * Gets the number of simulated CPUs
+     * @return The CPU count
+     */
+    public int getCpuCount() {
+        return cpus.length;
+    }
+    
+    /**
+     * Selects the page replacement policy
+     * @param policy CLOCK, second chance, aging, etc.
+     */
+    public void setReplacementPolicy(ReplacementPolicy policy) {
+        frameTable.setPolicy(policy);
+    }
+    
+    public ReplacementPolicy getReplacementPolicy() {
+        return frameTable.getPolicy();
+    }
+    
+    /**
+     * Selects the swap device, closing the previous one
+     * Only allowed while no page is swapped out
+     * @param device Mapped file, plain file, etc.
+     */
+    public void setSwapDevice(SwapDevice device) {
+        if (swapSpace.getUsedSlots() > 0) {
+            throw new IllegalStateException("Cannot change the swap device while pages are swapped out");
+        }
+        SwapDevice previous = swapDevice;
+        swapDevice = device;
+        previous.close();
+    }
+    
+    public SwapDevice getSwapDevice() {
+        return swapDevice;
+    }
+    
+    /**
+     * Turns huge pages on or off
+     * Huge pages need physically contiguous blocks, so with them on the buddy
+     * allocator hands out all frames; off, single frames come straight from
+     * the free page bitmap. Only allowed while no physical page is in use
+     * @param enabled true to back large allocations with huge pages
+     */
+    public void setHugePages(boolean enabled) {
+        if (memoryManager.getFreePageCount() != memoryManager.getTotalPages()) {
+            throw new IllegalStateException("Cannot change the physical allocator while memory is in use");
+        }
+        if (enabled != memoryManager.supportsContiguous()) {
+            memoryManager = new MemoryManager(geometry.getPhysicalPages(), enabled);
+        }
+    }
+    
+    public boolean isHugePages() {
+        return memoryManager.supportsContiguous();
+    }
+    
+    /**
+     * Makes every page swapped out so far durable on disk
+     */
+    public void checkpointSwap() {
+        swapDevice.force();
+    }
+    
+    /**
+     * Sets when the page-out daemon runs
+     * It is woken when fewer than low frames are free and evicts pages until
+     * high frames are free; a low watermark of 0 turns it off
+     * @param low Free frames below which the daemon starts evicting
+     * @param high Free frames at which it stops
+     */
+    public void setPageOutWatermarks(int low, int high) {
+        if (low < 0 || high < low || high > geometry.getPhysicalPages()) {
+            throw new IllegalArgumentException("Watermarks need 0 <= low <= high <= physical pages: " + low + ", " + high);
+        }
+        pageOutLowWatermark = low;
+        pageOutHighWatermark = high;
+    }
+    
+    public int getPageOutLowWatermark() {
+        return pageOutLowWatermark;
+    }
+    
+    public int getPageOutHighWatermark() {
+        return pageOutHighWatermark;
+    }
+    
+    /**
+     * Sets how many pages the page-out daemon writes to swap at once
+     * @param pages Pages per batch
+     */
+    public void setPageOutBatchSize(int pages) {
+        if (pages <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + pages);
+        }
+        pageOutBatchSize = pages;
+    }
+    
+    public int getPageOutBatchSize() {
+        return pageOutBatchSize;
+    }
+    
+    /**
+     * Sets how many pages a swap fault may read ahead along its process's fault pattern
+     * @param pages The largest read-ahead window (0 disables read-ahead, at most FaultPattern.MAX_WINDOW)
+     */
+    public void setReadAheadMax(int pages) {
+        if (pages < 0 || pages > FaultPattern.MAX_WINDOW) {
+            throw new IllegalArgumentException("Read-ahead window out of range: " + pages);
+        }
+        readAheadMax = pages;
+    }
+    
+    public int getReadAheadMax() {
+        return readAheadMax;
+    }
+    
+    /**
+     * Gets the number of pages read ahead of a fault
+     * @return The prefetched page count
+     */
+    public long getPrefetchedPages() {
+        return prefetchedPages.get();
+    }
+    
+    /**
+     * Gets the number of pages read ahead that were then used
+     * @return The prefetch hit count
+     */
+    public long getPrefetchHits() {
+        return prefetchHits.get();
+    }
+    
+    /**
+     * Gets the number of pages read ahead that were evicted without being used
+     * @return The wasted prefetch count
+     */
+    public long getPrefetchWasted() {
+        return prefetchWasted.get();
+    }
+    
+    /**
+     * Gets the share of pages read ahead that were used
+     * @return Hits per prefetched page, or 0 if nothing has been read ahead
+     */
+    public double getPrefetchHitRate() {
+        long prefetched = prefetchedPages.get();
+        return prefetched > 0 ? (double) prefetchHits.get() / prefetched : 0;
+    }
+    
+    /**
+     * Gets the number of pages the page-out daemon has written to swap
+     * Included in getPageOuts()
+     * @return The daemon's page-out count
+     */
+    public long getDaemonPageOuts() {
+        return daemonPageOuts.get();
+    }
+    
+    /**
+     * Gets the number of batch writes the page-out daemon has made
+     * @return The batch count
+     */
+    public long getPageOutBatches() {
+        return pageOutBatches.get();
+    }
+    
+    /**
+     * Gets the number of times a page fault lent the page-out daemon its CPU
+     * @return The wakeup count
+     */
+    public long getPageOutDaemonWakeups() {
+        return daemonWakeups.get();
+    }
+    
+    /**
+     * Gets the number of page faults that found no free frame and had to evict a page themselves
+     * @return The direct reclaim count
+     */
+    public long getDirectReclaims() {
+        return directReclaims.get();
+    }
+    
+    /**
+     * Sets the mailbox size of processes created from now on
+     * @param messages Most messages queued for a process at once (rounded up to a power of two, at least 2)
+     */
+    public void setMailboxSize(int messages) {
+        if (messages < 1) {
+            throw new IllegalArgumentException("Mailbox size must be positive: " + messages);
+        }
+        mailboxSize = messages;
+    }
+    
+    public int getMailboxSize() {
+        return mailboxSize;
+    }
+    
+    /**
+     * Sets what sending to a full mailbox does
+     * @param policy Block the sender, drop the oldest message, or fail the send
+     */
+    public void setMailboxPolicy(MailboxPolicy policy) {
+        mailboxPolicy = policy;
+    }
+    
+    public MailboxPolicy getMailboxPolicy() {
+        return mailboxPolicy;
+    }
+    
+    /**
+     * Gets the number of queued messages discarded to make room in a full mailbox
+     * @return The dropped message count
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+    
+    /**
+     * Gets the number of times a sender blocked on a full mailbox
+     * @return The blocked send count
+     */
+    public long getBlockedSends() {
+        return blockedSends.get();
+    }
+    
+    /**
+     * Gets the number of pages copied because a process wrote to a page it shared since a fork
+     * @return The copy-on-write copy count
+     */
+    public long getCopyOnWriteCopies() {
+        return copyOnWriteCopies.get();
+    }
+    
+    /**
+     * Gets the number of page faults that read a page back from swap
+     * @return The major fault count
+     */
+    public long getMajorFaults() {
+        return majorFaults.get();
+    }
+    
+    /**
+     * Gets the number of pages written to swap on eviction
+     * @return The page-out count
+     */
+    public long getPageOuts() {
+        return pageOuts.get();
+    }
+    
+    /**
+     * Gets the number of evictions that dropped a clean page without writing it
+     * @return The clean eviction count
+     */
+    public long getCleanEvictions() {
+        return cleanEvictions.get();
+    }
+    
+    /**
+     * Gets the number of swap file slots holding a page
+     * @return The used slot count
+     */
+    public int getSwapSlotsInUse() {
+        return swapSpace.getUsedSlots();
+    }
+    
+    /**
+     * Gets the size of the swap file
+     * @return The file size in slots (pages)
+     */
+    public int getSwapFileSlots() {
+        return swapSpace.getFileSlots();
+    }
+    
+    /**
+     * Gets the number of physical pages a process has in memory
+     * @param pid The process ID
+     * @return The resident page count, or -1 if there is no such process
+     */
+    public int getResidentPages(int pid) {
+        PCB pcb = processMap.get(pid);
+        return pcb != null ? frameTable.getResidentFrames(pcb) : -1;
+    }
+    
+    /**
+     * Gets the number of free extents (holes) in a process's virtual address space
+     * @param pid The process ID
+     * @return The free extent count, or -1 if there is no such process
+     */
+    public int getFreeExtentCount(int pid) {
+        PCB pcb = processMap.get(pid);
+        if (pcb == null) {
+            return -1;
+        }
+        pcb.getPageTableLock().lock();
+        try {
+            return pcb.getAddressSpace().getFreeExtentCount();
+        } finally {
+            pcb.getPageTableLock().unlock();
         }
-        nextSwapPage = 0;
+    }
+    
+    /**
+     * Gets the largest block a process can still allocate in its virtual address space
+     * @param pid The process ID
+     * @return The largest free extent in pages, or -1 if there is no such process
+     */
+    public int getLargestFreeExtent(int pid) {
+        PCB pcb = processMap.get(pid);
+        if (pcb == null) {
+            return -1;
+        }
+        pcb.getPageTableLock().lock();
+        try {
+            return pcb.getAddressSpace().getLargestFreeExtent();
+        } finally {
+            pcb.getPageTableLock().unlock();
+        }
+    }
+    
+    /**
+     * Gets the external fragmentation of a process's free virtual address space
+     * @param pid The process ID
+     * @return 0 when the free pages form one extent, approaching 1 as they scatter,
+     *         or -1 if there is no such process
+     */
+    public double getFragmentation(int pid) {
+        PCB pcb = processMap.get(pid);
+        if (pcb == null) {
+            return -1;
+        }
+        pcb.getPageTableLock().lock();
+        try {
+            return pcb.getAddressSpace().getFragmentation();
+        } finally {
+            pcb.getPageTableLock().unlock();
+        }
+    }
+    
+    /**
+     * Gets the number of physical pages in use
+     * A frame shared by several processes counts once
+     * @return The used page count
+     */
+    public int getUsedPhysicalPages() {
+        return memoryManager.getTotalPages() - memoryManager.getFreePageCount();
+    }
+    
+    /**
+     * Gets the number of physical pages that cannot be swapped out (huge pages)
+     * @return The pinned page count
+     */
+    public int getPinnedPhysicalPages() {
+        return frameTable.getPinnedFrames();
+    }
+    
+    /**
+     * Gets the memory geometry this kernel was built with
+     * @return The memory geometry
+     */
+    public MemoryGeometry getGeometry() {
+        return geometry;
+    }
+    
+    /**
+     * Timer interrupt handler
+     * Flags expired time slices and puts idle CPUs back to work
+     */
+    private void onTimerTick() {
+        long now = System.nanoTime();
+        for (CPU cpu : cpus) {
+            cpu.onTimerTick(now);
+        }
+        
+        // Expired sleepers are handed to their CPUs, which may dispatch them
+        wakeSleepers();
+        
+        // Let the replacement policy sample accessed bits
+        frameTable.tick();
+        
+        for (CPU cpu : cpus) {
+            if (cpu.isIdle()) {
+                PCB next = cpu.dispatchIfIdle();
+                if (next == null) {
+                    next = stealFor(cpu);
+                }
+                handOff(null, next);
+            }
+        }
+    }
+    
+    /**
+     * Called on every kernel entry; preempts the current process if its quantum expired
+     * A process that keeps running out its time slice is demoted by PCB.incrementTimeouts()
+     */
+    public void checkPreemption() {
+        PCB caller = callerProcess();
+        if (caller == null || caller.getCpu() == null || !caller.getCpu().takeQuantumExpired()) {
+            return;
+        }
+        caller.incrementTimeouts();
+        switchTask();
     }
     
     /**
@@ -65,31 +619,139 @@ public class Kernel {
      * @return Process ID of the created process
      */
     public int createProcess(Runnable program, Priority priority) {
-        Process process = new Process(program);
-        PCB pcb = new PCB(process, priority);
-        int pid = pcb.getPid();
+        return startProcess(new PCB(new Process(program, executionBackend), priority, geometry.getVirtualPages(), mailboxSize));
+    }
+    
+    /**
+     * Creates a child of the current process that starts with a copy of its memory
+     * Resident pages are not copied: parent and child share their frames
+     * read-only and each page is copied on its first write. Pages in swap get
+     * their own slot in the child, and huge pages, which are pinned, are
+     * copied into ordinary pages up front.
+     * @param program The program the child runs
+     * @return Process ID of the child, or -1 if out of memory or swap
+     */
+    public int fork(Runnable program) {
+        PCB parent = currentProcess();
+        if (parent == null) {
+            return -1;
+        }
+        PCB child = new PCB(new Process(program, executionBackend), parent.getPriority(), parent.getVirtualPages(), mailboxSize);
+        child.copyAddressSpace(parent);
         
-        // Add to appropriate queue based on priority
-        switch (priority) {
-            case REALTIME:
-                realtimeProcesses.add(pcb);
-                break;
-            case INTERACTIVE:
-                interactiveProcesses.add(pcb);
-                break;
-            case BACKGROUND:
-                backgroundProcesses.add(pcb);
-                break;
+        // Nothing else waits for the child's lock, so taking it second can't deadlock
+        parent.getPageTableLock().lock();
+        child.getPageTableLock().lock();
+        try {
+            boolean copied = copyPages(parent, child);
+            
+            // The parent's TLB entries may still allow writes to pages that are now shared
+            for (CPU cpu : cpus) {
+                cpu.getTLB().invalidateAll(parent.getPid());
+            }
+            if (!copied) {
+                releaseAddressSpace(child);
+                return -1;
+            }
+            
+            // The child inherits the parent's shared memory attachments
+            synchronized (sharedSegments) {
+                for (SharedMemorySegment segment : parent.segments.values()) {
+                    segment.attach();
+                }
+            }
+            child.segments.putAll(parent.segments);
+        } finally {
+            child.getPageTableLock().unlock();
+            parent.getPageTableLock().unlock();
         }
+        return startProcess(child);
+    }
+    
+    /**
+     * Fills a new child's page table from its parent's
+     * Must be called with both processes' page table locks held
+     * @param parent The forking process
+     * @param child The child, with nothing mapped yet
+     * @return true if done, false if out of memory or swap
+     */
+    private boolean copyPages(PCB parent, PCB child) {
+        byte[] memory = Process.getMemory();
+        int pageShift = geometry.getPageShift();
+        byte[] buffer = null; // For copying swap slots
+        for (int page = parent.nextMappedPage(0); page != -1; page = parent.nextMappedPage(page + 1)) {
+            int hugeBase = parent.getHugePage(page);
+            if (hugeBase != -1) {
+                for (int i = 0; i < PCB.HUGE_PAGE_PAGES; i++) {
+                    int frame = allocateFrame();
+                    if (frame == -1) {
+                        return false;
+                    }
+                    System.arraycopy(memory, (hugeBase + i) << pageShift, memory, frame << pageShift, geometry.getPageSize());
+                    child.setPte(page + i, PageTable.makePte(frame, -1));
+                    frameTable.assign(frame, child, page + i);
+                }
+                page |= PCB.HUGE_PAGE_PAGES - 1;
+                continue;
+            }
+            
+            long pte = parent.getPte(page);
+            int frame = PageTable.frameOf(pte);
+            if (frame != -1 && (pte & PageTable.SHARED) != 0) {
+                // Shared memory stays shared, the child writes to it in place too
+                memoryManager.share(frame);
+                child.setPte(page, pte & ~(PageTable.ACCESSED | PageTable.PREFETCHED));
+                child.sharedPages++;
+            } else if (frame != -1) {
+                // Share the frame; a shared frame belongs to no one process, so it can't be evicted
+                if ((pte & PageTable.COPY_ON_WRITE) == 0) {
+                    frameTable.release(frame);
+                    pte |= PageTable.COPY_ON_WRITE;
+                    parent.setPte(page, pte);
+                    parent.sharedPages++;
+                }
+                memoryManager.share(frame);
+                child.setPte(page, PageTable.withDiskSlot(pte, -1) & ~(PageTable.ACCESSED | PageTable.PREFETCHED));
+                child.sharedPages++;
+            } else if (PageTable.diskSlotOf(pte) != -1) {
+                int slot = swapSpace.allocate();
+                if (slot == -1) {
+                    return false;
+                }
+                if (buffer == null) {
+                    buffer = new byte[geometry.getPageSize()];
+                }
+                swapDevice.readPage(PageTable.diskSlotOf(pte), buffer, 0);
+                swapDevice.writePage(slot, buffer, 0);
+                child.setPte(page, PageTable.withDiskSlot(pte, slot) & ~PageTable.ACCESSED);
+                child.swapSlots++;
+            } else {
+                child.setPte(page, pte); // Never touched, zero-filled on first use
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Queues a new process on a CPU
+     * @param pcb The process's PCB, not yet started
+     * @return Process ID of the process
+     */
+    private int startProcess(PCB pcb) {
+        int pid = pcb.getPid();
+        
+        // Start the thread; it parks until the kernel dispatches it
+        pcb.run();
         
         // Add to process map
         processMap.put(pid, pcb);
         
-        // If this is the first process, make it the current one
-        if (currentProcess == null) {
-            currentProcess = pcb;
-            pcb.run();
-        }
+        // Spread new processes over the CPUs
+        CPU cpu = cpus[Math.floorMod(nextCpu.getAndIncrement(), cpus.length)];
+        
+        // Add to that CPU's run queue, dispatching straight away if it is idle
+        cpu.wake(pcb);
+        kick(cpu);
         
         return pid;
     }
@@ -99,7 +761,8 @@ public class Kernel {
      * @return The current PID
      */
     public int getPid() {
-        return currentProcess != null ? currentProcess.getPid() : -1;
+        PCB current = currentProcess();
+        return current != null ? current.getPid() : -1;
     }
     
     /**
@@ -117,75 +780,182 @@ public class Kernel {
     }
     
     /**
-     * Sends a message to another process
+     * Sends a copy of a message to another process
      * @param message The message to send
+     * @return true if queued, false if there is no such process or its mailbox is full and
+     *         the mailbox policy is FAIL (or BLOCK, but the sender is not a process that can wait)
      */
-    public void sendMessage(KernelMessage message) {
-        // Create a copy of the message
-        KernelMessage copy = new KernelMessage(message);
-        
+    public boolean sendMessage(KernelMessage message) {
+        // Copy the message into one from the pool
+        return deliverMessage(messagePool.obtainCopy(message), null);
+    }
+    
+    /**
+     * Sends a message built from part of an array, without the caller creating a message
+     * @param targetPid The process ID of the target
+     * @param what An integer indicating the message type
+     * @param data The array holding the data, copied before this returns
+     * @param offset Where in it the data starts
+     * @param length Bytes of data
+     * @return true if queued, false as for sendMessage(KernelMessage)
+     */
+    public boolean sendMessage(int targetPid, int what, byte[] data, int offset, int length) {
+        return deliverMessage(messagePool.obtain(targetPid, what, data, offset, length), null);
+    }
+    
+    /**
+     * Sends a message to another process without copying its data
+     * The data moves to the receiver and the sender's message is left empty,
+     * unless the send fails: then the data is back in it, to retry with
+     * @param message The message to send
+     * @return true if queued, false as for sendMessage(KernelMessage)
+     */
+    public boolean transferMessage(KernelMessage message) {
+        return deliverMessage(messagePool.obtainMoved(message), message);
+    }
+    
+    /**
+     * Queues a message the kernel owns on its target process, applying the
+     * mailbox policy while the target's mailbox is full
+     * @param copy The message, no longer reachable by the sender
+     * @param source The sender's message the data was moved out of, to move it
+     *        back into if the send fails, or null if the data was copied
+     * @return true if queued
+     */
+    private boolean deliverMessage(KernelMessage copy, KernelMessage source) {
         // Set the sender PID
         copy.setSenderPid(getPid());
         
         // Find the target process
         PCB targetPCB = processMap.get(copy.getTargetPid());
-        if (targetPCB != null) {
-            // Add the message to the target's queue
-            targetPCB.addMessage(copy);
-            
-            // If the target is waiting for a message, move it back to the runnable queue
-            if (waitingForMessageProcesses.containsKey(copy.getTargetPid())) {
-                PCB waitingPCB = waitingForMessageProcesses.remove(copy.getTargetPid());
-                
-                // Add back to appropriate queue based on priority
-                switch (waitingPCB.getPriority()) {
-                    case REALTIME:
-                        realtimeProcesses.add(waitingPCB);
-                        break;
-                    case INTERACTIVE:
-                        interactiveProcesses.add(waitingPCB);
-                        break;
-                    case BACKGROUND:
-                        backgroundProcesses.add(waitingPCB);
-                        break;
+        while (targetPCB != null && !targetPCB.addMessage(copy)) {
+            MailboxPolicy policy = mailboxPolicy;
+            if (policy == MailboxPolicy.DROP) {
+                KernelMessage oldest = targetPCB.getNextMessage();
+                if (oldest != null) {
+                    oldest.recycle();
+                    droppedMessages.incrementAndGet();
                 }
+            } else if (policy == MailboxPolicy.FAIL || !waitForMailboxRoom(targetPCB)) {
+                targetPCB = null;
+            } else if (!processMap.containsKey(targetPCB.getPid())) {
+                targetPCB = null; // It exited while we waited
             }
         }
+        if (targetPCB == null) {
+            if (source != null) {
+                copy.moveTo(source);
+            }
+            copy.recycle();
+            return false;
+        }
+        
+        // If the target is waiting for a message, it becomes runnable again.
+        // Only one sender wins the flag, so it is woken exactly once
+        if (targetPCB.clearWaitingForMessage()) {
+            wake(targetPCB);
+        }
+        return true;
+    }
+    
+    /**
+     * Blocks the calling process until a full mailbox may have room
+     * It is woken when the mailbox's owner takes a message or exits, and
+     * may find the room taken by another sender by then, so callers retry
+     * their send in a loop
+     * @param target The process whose mailbox is full
+     * @return true once woken, false if the caller can't block (it is no
+     *         process, or the mailbox is its own)
+     */
+    private boolean waitForMailboxRoom(PCB target) {
+        PCB previous = callerProcess();
+        if (previous == null || previous == target) {
+            return false;
+        }
+        blockedSends.incrementAndGet();
+        
+        // Remember our CPU before anyone can wake us onto another one
+        CPU cpu = previous.getCpu();
+        previous.resetTimeouts();
+        
+        // Mark ourselves waiting before registering, so a receiver that finds
+        // us registered never skips us as a sender that already found room.
+        // Then look again: room made, or an exit, before the target saw us
+        // registered would otherwise be missed
+        previous.setWaitingForRoom();
+        target.addBlockedSender(previous);
+        if ((target.hasMailboxRoom() || !processMap.containsKey(target.getPid())) && previous.clearWaitingForRoom()) {
+            // Don't leave an entry a later wakeup would be spent on
+            target.removeBlockedSender(previous);
+            return true;
+        }
+        
+        // Give up the CPU and park until the target wakes us and we are dispatched again
+        handOff(previous, schedule(cpu, false));
+        return true;
+    }
+    
+    /**
+     * Wakes one sender blocked on a process's mailbox, after it took a message
+     * @param receiver The process that took the message
+     */
+    private void wakeBlockedSender(PCB receiver) {
+        PCB sender;
+        while ((sender = receiver.pollBlockedSender()) != null) {
+            // Skip senders that found room themselves after registering
+            if (sender.clearWaitingForRoom()) {
+                wake(sender);
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Takes the next message from a process's mailbox
+     * @param receiver The receiving process
+     * @return The message, or null if there is none
+     */
+    private KernelMessage takeMessage(PCB receiver) {
+        KernelMessage message = receiver.getNextMessage();
+        if (message != null) {
+            wakeBlockedSender(receiver);
+        }
+        return message;
     }
     
     /**
      * Waits for a message to arrive
+     * A message from the kernel can be recycled once the caller is done with it
      * @return The received message, or null if the process is terminated
      */
     public KernelMessage waitForMessage() {
-        if (currentProcess == null) {
+        PCB previous = callerProcess();
+        if (previous == null) {
             return null;
         }
         
-        // Check if there's already a message
-        if (currentProcess.hasMessages()) {
-            return currentProcess.getNextMessage();
-        }
-        
-        // No message yet, so we need to wait
-        int pid = currentProcess.getPid();
-        
-        // Move the current process to the waiting list
-        waitingForMessageProcesses.put(pid, currentProcess);
-        
-        // Clear the current process
-        currentProcess = null;
-        
-        // Switch to another task
-        switchTask();
-        
-        // When we get back here, we should have a message
-        PCB process = processMap.get(pid);
-        if (process != null && process.hasMessages()) {
-            return process.getNextMessage();
+        // Check if there's already a message. Under the DROP policy a sender
+        // may discard the message that woke us, so keep waiting until one is left
+        KernelMessage message;
+        while ((message = takeMessage(previous)) == null) {
+            // Remember our CPU before anyone can wake us onto another one
+            CPU cpu = previous.getCpu();
+            
+            // No message yet, so we need to wait
+            // Blocking is voluntary, so it doesn't count towards demotion
+            previous.resetTimeouts();
+            
+            // Announce that we are waiting, then look again: a sender that
+            // queued a message before seeing the flag would otherwise be missed
+            previous.setWaitingForMessage();
+            if (previous.hasMessages() && previous.clearWaitingForMessage()) {
+                continue;
+            }
+            
+            // Give up the CPU and park until a message wakes us and we are dispatched again
+            handOff(previous, schedule(cpu, false));
         }
-        
-        return null;
+        return message;
     }
     
     /**
@@ -193,127 +963,321 @@ public class Kernel {
      * @param milliseconds Time to sleep in milliseconds
      */
     public void sleep(int milliseconds) {
-        if (currentProcess != null) {
-            currentProcess.sleep(milliseconds);
-            sleepingProcesses.add(currentProcess);
-            currentProcess = null;
-            switchTask();
+        PCB previous = callerProcess();
+        if (previous == null) {
+            return;
         }
+        
+        // Remember our CPU before anyone can wake us onto another one
+        CPU cpu = previous.getCpu();
+        
+        previous.resetTimeouts();
+        synchronized (sleepingProcesses) {
+            previous.sleep(milliseconds);
+            sleepingProcesses.add(previous);
+        }
+        handOff(previous, schedule(cpu, false));
     }
     
     /**
      * Switches to the next task based on priority scheduling
      */
     public void switchTask() {
+        // Only a dispatched process can give up its CPU
+        PCB previous = callerProcess();
+        if (previous == null) {
+            return;
+        }
+        handOff(previous, schedule(previous.getCpu(), true));
+    }
+    
+    /**
+     * Picks the next process for a CPU, stealing from other CPUs if it has nothing to run
+     * @param cpu The CPU being rescheduled
+     * @param keepCurrent true to requeue its current process, false if that process blocked or exited
+     * @return The process that should hold the CPU next, or null if it goes idle
+     */
+    private PCB schedule(CPU cpu, boolean keepCurrent) {
         // First, check if any sleeping processes should wake up
-        checkSleepingProcesses();
+        wakeSleepers();
         
-        // Clear the TLB when switching tasks
-        Process.clearTLB();
+        PCB next = cpu.reschedule(keepCurrent);
+        if (next == null) {
+            next = stealFor(cpu);
+        }
+        return next;
+    }
+    
+    /**
+     * Lets an idle CPU take a runnable process from the busiest other CPU
+     * @param thief The idle CPU
+     * @return The stolen process if the thief dispatched it, otherwise null
+     */
+    private PCB stealFor(CPU thief) {
+        CPU victim = null;
+        int victimLoad = 0;
+        for (CPU cpu : cpus) {
+            int load = cpu.load();
+            if (cpu != thief && load > victimLoad) {
+                victim = cpu;
+                victimLoad = load;
+            }
+        }
+        if (victim == null) {
+            return null;
+        }
         
-        // If there's no current process, select one
-        if (currentProcess == null) {
-            selectNextProcess();
-        } else {
-            // Otherwise, put the current process back in its queue
-            switch (currentProcess.getPriority()) {
-                case REALTIME:
-                    realtimeProcesses.add(currentProcess);
-                    break;
-                case INTERACTIVE:
-                    interactiveProcesses.add(currentProcess);
-                    break;
-                case BACKGROUND:
-                    backgroundProcesses.add(currentProcess);
+        PCB stolen = victim.steal();
+        if (stolen == null || !thief.dispatchStolen(stolen)) {
+            return null;
+        }
+        return stolen;
+    }
+    
+    /**
+     * Makes a blocked process runnable again on the CPU it last ran on
+     * @param pcb The process to wake
+     */
+    private void wake(PCB pcb) {
+        CPU home = pcb.getCpu() != null ? pcb.getCpu() : cpus[0];
+        home.wake(pcb);
+        if (!kick(home)) {
+            // Its CPU is busy, let an idle one pick it up instead
+            for (CPU cpu : cpus) {
+                if (cpu.isIdle()) {
+                    handOff(null, stealFor(cpu));
                     break;
+                }
             }
-            
-            // And select a new one
-            currentProcess = null;
-            selectNextProcess();
         }
     }
     
     /**
-     * Checks if any sleeping processes should wake up
+     * Dispatches a process on a CPU if it is idle
+     * @param cpu The CPU to kick
+     * @return true if the CPU was idle and is now running something
+     */
+    private boolean kick(CPU cpu) {
+        if (!cpu.isIdle()) {
+            return false;
+        }
+        PCB next = cpu.dispatchIfIdle();
+        handOff(null, next);
+        return next != null;
+    }
+    
+    /**
+     * Passes the CPU token from one process to another
+     * The previous process's thread parks here until it is dispatched again
+     * @param previous The process giving up the CPU, or null if it is not coming back
+     * @param next The process to dispatch, or null if the CPU goes idle
+     */
+    private void handOff(PCB previous, PCB next) {
+        if (next == previous) {
+            return; // Nothing else to run, keep going
+        }
+        if (next != null) {
+            next.resume();
+        }
+        if (previous != null) {
+            previous.stop();
+        }
+    }
+    
+    /**
+     * Gets the process that is making this kernel call
+     * @return The caller's PCB, or null if the caller is not a dispatched process thread
      */
-    private void checkSleepingProcesses() {
-        List<PCB> awakened = new ArrayList<>();
+    private PCB callerProcess() {
+        Process process = Process.current();
+        if (process == null || process.getPcb() == null || process.getPcb().getCpu() == null) {
+            return null;
+        }
+        return process.getPcb();
+    }
+    
+    /**
+     * Gets the process a kernel call acts on
+     * Calls from outside any process thread act on whatever CPU 0 is running
+     * @return The current process, or null if there is none
+     */
+    private PCB currentProcess() {
+        PCB caller = callerProcess();
+        return caller != null ? caller : cpus[0].getCurrent();
+    }
+    
+    /**
+     * Gets the CPU the calling process is running on
+     * @return The caller's CPU, or null if the caller is not a dispatched process thread
+     */
+    private CPU callerCpu() {
+        PCB caller = callerProcess();
+        return caller != null ? caller.getCpu() : null;
+    }
+    
+    /**
+     * Removes one page's translation from every CPU's TLB
+     * The process may have run, and left entries, on any CPU. If it is running
+     * and may be in the middle of an access through the old translation, waits
+     * a little for the access to finish. An access under way on the caller's
+     * own CPU can't finish while the caller runs there, so then there is no wait.
+     * @param pid The owning process
+     * @param virtualPage The virtual page being unmapped
+     * @return true if no CPU is still using the translation
+     */
+    private boolean shootdownTLBs(int pid, int virtualPage) {
+        for (CPU cpu : cpus) {
+            cpu.getTLB().invalidate(pid, virtualPage);
+        }
         
-        for (PCB pcb : sleepingProcesses) {
-            if (pcb.shouldWake()) {
-                pcb.clearWakeTime();
-                awakened.add(pcb);
-                
-                // Add back to appropriate queue
-                switch (pcb.getPriority()) {
-                    case REALTIME:
-                        realtimeProcesses.add(pcb);
-                        break;
-                    case INTERACTIVE:
-                        interactiveProcesses.add(pcb);
-                        break;
-                    case BACKGROUND:
-                        backgroundProcesses.add(pcb);
-                        break;
+        // The access under way on the caller's CPU is one the caller faulted in the
+        // middle of, e.g. the other page of a memcpy, or that of a process that lent
+        // the CPU to the page-out daemon, so its page must stay
+        CPU own = callerCpu();
+        if (own != null && own.getTLB().isInUse(pid, virtualPage)) {
+            return false;
+        }
+        PCB caller = callerProcess();
+        if (caller != null && caller.getPid() == pid) {
+            return true;
+        }
+        long deadline = System.nanoTime() + SHOOTDOWN_WAIT_NANOS;
+        for (CPU cpu : cpus) {
+            while (cpu != own && cpu.getTLB().isInUse(pid, virtualPage)) {
+                if (System.nanoTime() - deadline >= 0) {
+                    return false;
                 }
+                Thread.yield();
             }
         }
-        
-        // Remove awakened processes from sleeping list
-        sleepingProcesses.removeAll(awakened);
+        return true;
     }
     
     /**
-     * Selects the next process to run based on priority
+     * Gets the total TLB hits across all CPUs
+     * @return The number of hits
      */
-    private void selectNextProcess() {
-        // Try to get a realtime process first
-        if (!realtimeProcesses.isEmpty()) {
-            currentProcess = realtimeProcesses.remove(0);
-            currentProcess.resume();
-            return;
+    public long getTLBHits() {
+        long hits = 0;
+        for (CPU cpu : cpus) {
+            hits += cpu.getTLB().getHits();
         }
-        
-        // Then try interactive
-        if (!interactiveProcesses.isEmpty()) {
-            // For interactive processes, we'll use a simple round-robin approach
-            currentProcess = interactiveProcesses.remove(0);
-            currentProcess.resume();
-            return;
+        return hits;
+    }
+    
+    /**
+     * Gets the total TLB misses across all CPUs
+     * @return The number of misses
+     */
+    public long getTLBMisses() {
+        long misses = 0;
+        for (CPU cpu : cpus) {
+            misses += cpu.getTLB().getMisses();
         }
+        return misses;
+    }
+    
+    /**
+     * Moves every sleeper whose deadline has passed back to its CPU
+     */
+    private void wakeSleepers() {
+        long now = System.nanoTime();
+        PCB pcb;
         
-        // Finally, try background
-        if (!backgroundProcesses.isEmpty()) {
-            currentProcess = backgroundProcesses.remove(0);
-            currentProcess.resume();
-            return;
+        while (true) {
+            synchronized (sleepingProcesses) {
+                pcb = sleepingProcesses.pollExpired(now);
+                if (pcb == null) {
+                    return;
+                }
+                pcb.clearWakeTime();
+            }
+            
+            // Add back to appropriate queue
+            wake(pcb);
         }
-        
-        // If we get here, there are no runnable processes
-        // In a real OS, we would idle or halt
     }
     
     /**
      * Terminates the current process
+     * When called from the process's own thread this does not return
      */
     public void terminateCurrentProcess() {
-        if (currentProcess != null) {
-            int pid = currentProcess.getPid();
-            
-            // Free all memory allocated to this process
-            int[] physicalPages = currentProcess.getAllocatedPhysicalPages();
-            memoryManager.freePages(physicalPages);
-            
-            // Remove from process map
-            processMap.remove(pid);
-            
-            // Clear current process
-            currentProcess = null;
-            
-            // Switch to another task
-            switchTask();
+        PCB previous = currentProcess();
+        if (previous == null) {
+            return;
+        }
+        int pid = previous.getPid();
+        
+        // Remove from process map
+        processMap.remove(pid);
+        
+        // Senders blocked on its mailbox find it gone, and its messages go back to the pool
+        for (PCB sender = previous.pollBlockedSender(); sender != null; sender = previous.pollBlockedSender()) {
+            if (sender.clearWaitingForRoom()) {
+                wake(sender);
+            }
+        }
+        for (KernelMessage message = previous.getNextMessage(); message != null; message = previous.getNextMessage()) {
+            message.recycle();
+        }
+        
+        // Its address space is gone, so are its TLB entries
+        for (CPU cpu : cpus) {
+            cpu.getTLB().invalidateAll(pid);
+        }
+        
+        // Free all memory allocated to this process
+        previous.getPageTableLock().lock();
+        try {
+            releaseAddressSpace(previous);
+        } finally {
+            previous.getPageTableLock().unlock();
+        }
+        
+        // A parent or child left alone on frames it shared with it owns them again
+        adoptSoleSharedFrames();
+        
+        // Switch to another task
+        CPU cpu = previous.getCpu();
+        if (cpu != null && cpu.getCurrent() == previous) {
+            handOff(null, schedule(cpu, false));
+        }
+        
+        // Unwind the terminated program's thread
+        if (previous.isCurrentThread()) {
+            throw new Process.Exit();
+        }
+    }
+    
+    /**
+     * Frees a process's frames, its share of shared frames, its swap slots and
+     * its attachments to shared memory segments
+     * Must be called with the process's page table lock held
+     * @param process The process
+     */
+    private void releaseAddressSpace(PCB process) {
+        // Its own frames come straight from its frame list
+        int[] physicalPages = frameTable.releaseAll(process);
+        memoryManager.freePages(physicalPages);
+        
+        // Only a process with pages in swap or shared frames needs its table walked
+        for (int page = process.nextMappedPage(0); page != -1 && (process.swapSlots > 0 || process.sharedPages > 0);
+                page = process.nextMappedPage(page + 1)) {
+            long pte = process.getPte(page);
+            if ((pte & PageTable.COPY_ON_WRITE) != 0) {
+                noteSoleSharer(PageTable.frameOf(pte), page, memoryManager.freePage(PageTable.frameOf(pte)));
+                process.sharedPages--;
+            } else if ((pte & PageTable.SHARED) != 0) {
+                memoryManager.freePage(PageTable.frameOf(pte));
+                process.sharedPages--;
+            }
+            freeSwapSlot(process, PageTable.diskSlotOf(pte));
         }
+        for (SharedMemorySegment segment : process.segments.values()) {
+            releaseSegment(segment);
+        }
+        process.segments.clear();
     }
     
     /**
@@ -363,111 +1327,587 @@ public class Kernel {
     }
     
     /**
-     * Gets the mapping for a virtual page
+     * Gets the mapping for a virtual page, faulting it in if needed
+     * Marks the page accessed, and dirty for a write, the way an MMU would on a TLB fill
      * @param virtualPageNumber The virtual page number
+     * @param write true if the page is being written
      * @return The physical page number
      */
-    public int getMapping(int virtualPageNumber) {
-        if (currentProcess == null) {
+    public int getMapping(int virtualPageNumber, boolean write) {
+        PCB current = currentProcess();
+        if (current == null) {
             return -1;
         }
         
-        // Get the mapping for this virtual page
-        VirtualToPhysicalMapping mapping = currentProcess.getMapping(virtualPageNumber);
-        
-        // If no mapping exists, this is an invalid access
-        if (mapping == null) {
-            return -1;
-        }
+        CPU cpu = callerCpu();
         
-        // If the page is already in memory, just return it
-        if (mapping.isInMemory()) {
-            // Update the TLB with this mapping
-            Process.updateTLB(virtualPageNumber, mapping.physicalPageNumber);
-            return mapping.physicalPageNumber;
+        // Short of frames, a fault lends its CPU to the page-out daemon before it
+        // takes its page table lock, so the daemon may evict its cold pages too
+        if (cpu != null && memoryManager.getFreePageCount() < pageOutLowWatermark) {
+            long pte = current.getPte(virtualPageNumber);
+            if ((pte & PageTable.VALID) != 0 && PageTable.frameOf(pte) == -1) {
+                lendCpuToPageOutDaemon(current, cpu);
+            }
         }
         
-        // Page is not in memory, need to load it
-        
-        // First, try to allocate a new physical page
-        int physicalPage = memoryManager.getRandomFreePage();
-        
-        // If no free pages, need to swap out a page
-        if (physicalPage == -1) {
-            // Find a page to swap out (simple random selection for now)
-            physicalPage = swapOutPage();
+        int physicalPage;
+        current.getPageTableLock().lock();
+        try {
+            // Huge pages are pinned, so they are always in memory
+            int hugeBase = current.getHugePage(virtualPageNumber);
+            if (hugeBase != -1) {
+                physicalPage = hugeBase + (virtualPageNumber & (PCB.HUGE_PAGE_PAGES - 1));
+                if (cpu != null) {
+                    cpu.getTLB().updateHuge(current.getPid(), virtualPageNumber, hugeBase);
+                }
+                return physicalPage;
+            }
             
-            // If still no page available, we're out of memory
-            if (physicalPage == -1) {
+            // Get the page table entry for this virtual page
+            long pte = current.getPte(virtualPageNumber);
+            
+            // If no mapping exists, this is an invalid access
+            if ((pte & PageTable.VALID) == 0) {
                 return -1;
             }
+            
+            // If the page is already in memory, just use it
+            physicalPage = PageTable.frameOf(pte);
+            if (physicalPage == -1) {
+                // Page is not in memory, need to load it
+                physicalPage = loadPage(current, virtualPageNumber, pte);
+                if (physicalPage == -1) {
+                    return -1;
+                }
+                pte = current.getPte(virtualPageNumber);
+            }
+            
+            // The first write to a page shared since a fork gets this process its own copy
+            if (write && (pte & PageTable.COPY_ON_WRITE) != 0) {
+                physicalPage = copyOnWrite(current, virtualPageNumber, pte);
+                if (physicalPage == -1) {
+                    return -1;
+                }
+                pte = current.getPte(virtualPageNumber);
+            }
+            
+            // First use of a page that was read ahead
+            if ((pte & PageTable.PREFETCHED) != 0) {
+                pte &= ~PageTable.PREFETCHED;
+                prefetchHits.incrementAndGet();
+            }
+            
+            // Record the access
+            pte |= PageTable.ACCESSED | (write ? PageTable.DIRTY : 0);
+            current.setPte(virtualPageNumber, pte);
+            
+            // Fill the TLB before unlocking: an eviction on another CPU shoots
+            // the entry down only after it has taken this lock
+            if (cpu != null) {
+                boolean writable = (pte & (PageTable.DIRTY | PageTable.COPY_ON_WRITE)) == PageTable.DIRTY;
+                cpu.getTLB().update(current.getPid(), virtualPageNumber, physicalPage, writable);
+            }
+            return physicalPage;
+        } finally {
+            current.getPageTableLock().unlock();
+            if (!soleSharedFrames.isEmpty()) {
+                adoptSoleSharedFrames();
+            }
+        }
+    }
+    
+    /**
+     * Brings a page into physical memory, swapping out another page if necessary
+     * Must be called with the owning process's page table lock held
+     * @param process The owning process
+     * @param virtualPage The virtual page to load
+     * @param pte Its current page table entry
+     * @return The physical page it now lives in, or -1 if out of memory
+     */
+    private int loadPage(PCB process, int virtualPage, long pte) {
+        int physicalPage = allocateFrame();
+        if (physicalPage == -1) {
+            return -1;
         }
         
         // Now we have a physical page, check if we need to load from disk
-        if (mapping.isOnDisk()) {
-            // Load the page from disk
-            loadPageFromDisk(mapping.diskPageNumber, physicalPage);
+        int diskPage = PageTable.diskSlotOf(pte);
+        if (diskPage != -1) {
+            // Load the page from disk, along with the pages its fault pattern predicts
+            // Frames being read into are held until mapped, so all CPUs together
+            // may only read ahead into a quarter of memory at once
+            int maxWindow = Math.min(readAheadMax, geometry.getPhysicalPages() / (4 * cpus.length));
+            int window = process.getFaultPattern().recordFault(virtualPage, maxWindow);
+            if (window > 0) {
+                readAhead(process, virtualPage, diskPage, physicalPage, window);
+            } else {
+                loadPageFromDisk(diskPage, physicalPage);
+            }
+            majorFaults.incrementAndGet();
         } else {
             // This is a newly allocated page, initialize it to zeros
             clearPage(physicalPage);
         }
         
-        // Update the mapping
-        mapping.physicalPageNumber = physicalPage;
+        // Update the mapping; the page matches its swap copy (if any) again
+        process.setPte(virtualPage, PageTable.withFrame(pte, physicalPage) & ~PageTable.DIRTY);
+        frameTable.assign(physicalPage, process, virtualPage);
         
-        // Update the TLB
-        Process.updateTLB(virtualPageNumber, physicalPage);
+        return physicalPage;
+    }
+    
+    /**
+     * Gives a process its own copy of a page it shares copy-on-write
+     * The last process still sharing the frame just takes it over
+     * Must be called with the process's page table lock held
+     * @param process The writing process
+     * @param virtualPage The page
+     * @param pte Its current page table entry
+     * @return The frame the page now has to itself, or -1 if out of memory
+     */
+    private int copyOnWrite(PCB process, int virtualPage, long pte) {
+        int physicalPage = PageTable.frameOf(pte);
+        if (memoryManager.getReferences(physicalPage) > 1) {
+            int copy = allocateFrame();
+            if (copy == -1) {
+                return -1;
+            }
+            int pageShift = geometry.getPageShift();
+            System.arraycopy(Process.getMemory(), physicalPage << pageShift, Process.getMemory(), copy << pageShift, geometry.getPageSize());
+            noteSoleSharer(physicalPage, virtualPage, memoryManager.freePage(physicalPage));
+            physicalPage = copy;
+            copyOnWriteCopies.incrementAndGet();
+        }
         
+        // Its other CPUs' TLBs may still hold the read-only translation
+        process.setPte(virtualPage, PageTable.withFrame(pte, physicalPage) & ~PageTable.COPY_ON_WRITE);
+        shootdownTLBs(process.getPid(), virtualPage);
+        frameTable.assign(physicalPage, process, virtualPage);
+        process.sharedPages--;
+        return physicalPage;
+    }
+    
+    /**
+     * Remembers a copy-on-write frame that one sharer let go of, if only one is left
+     * The last sharer is locked later, by adoptSoleSharedFrames, as the caller
+     * may hold another process's page table lock
+     * @param physicalPage The frame
+     * @param virtualPage The page it is mapped at, the same in every sharer since fork keeps addresses
+     * @param references The references left
+     */
+    private void noteSoleSharer(int physicalPage, int virtualPage, int references) {
+        if (references == 1) {
+            soleSharedFrames.add((long) physicalPage << 32 | virtualPage);
+        }
+    }
+    
+    /**
+     * Gives copy-on-write frames down to one sharer back to that process
+     * It owns the page outright again: a write needs no copy, and the frame is
+     * in the frame table, so it can be evicted. A sharer whose page table lock
+     * is busy is tried again on a later call, so callers may hold locks
+     */
+    private void adoptSoleSharedFrames() {
+        for (int pending = soleSharedFrames.size(); pending > 0; pending--) {
+            Long entry = soleSharedFrames.poll();
+            if (entry == null) {
+                return;
+            }
+            if (!adoptSoleSharedFrame((int) (entry >>> 32), (int) (long) entry)) {
+                soleSharedFrames.add(entry);
+            }
+        }
+    }
+    
+    /**
+     * Gives one copy-on-write frame down to one sharer back to that process
+     * @param physicalPage The frame
+     * @param virtualPage The page it is mapped at
+     * @return true if done or no longer needed, false if the sharer was busy
+     */
+    private boolean adoptSoleSharedFrame(int physicalPage, int virtualPage) {
+        for (PCB process : processMap.values()) {
+            // Only a look without the lock, confirmed below
+            long pte = process.getPte(virtualPage);
+            if (PageTable.frameOf(pte) != physicalPage || (pte & PageTable.COPY_ON_WRITE) == 0) {
+                continue;
+            }
+            ReentrantLock lock = process.getPageTableLock();
+            if (lock.isHeldByCurrentThread() || !lock.tryLock()) {
+                return false;
+            }
+            try {
+                // It may have written the page, exited or forked again meanwhile
+                pte = process.getPte(virtualPage);
+                if (PageTable.frameOf(pte) == physicalPage && (pte & PageTable.COPY_ON_WRITE) != 0
+                        && memoryManager.getReferences(physicalPage) == 1) {
+                    process.setPte(virtualPage, pte & ~PageTable.COPY_ON_WRITE);
+                    frameTable.assign(physicalPage, process, virtualPage);
+                    process.sharedPages--;
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+        return true; // The last sharer is gone as well
+    }
+    
+    /**
+     * Gets a frame for a page, swapping out another page if necessary
+     * @return The frame, or -1 if out of memory
+     */
+    private int allocateFrame() {
+        // Take a free page, or else let the replacement policy find one to swap out.
+        // Both can fail for a moment while other CPUs hold the frames (faulting,
+        // or freeing them), so back off and retry before calling it out of memory
+        int physicalPage = -1;
+        for (int round = 0; physicalPage == -1 && round < SWAP_OUT_ROUNDS; round++) {
+            if (round > 0) {
+                LockSupport.parkNanos(SWAP_OUT_BACKOFF_NANOS * round);
+            }
+            physicalPage = memoryManager.allocatePage();
+            if (physicalPage == -1) {
+                physicalPage = swapOutPage();
+                if (physicalPage != -1) {
+                    directReclaims.incrementAndGet();
+                }
+            }
+        }
         return physicalPage;
     }
     
+    /**
+     * Reads a faulting page together with the next pages along its fault pattern
+     * Pages already in memory are stepped over. The others get frames the way
+     * the faulting page did, and are mapped unaccessed and marked PREFETCHED
+     * until used, so the replacement policy takes them first if they never are.
+     * Must be called with the owning process's page table lock held
+     * @param process The owning process
+     * @param virtualPage The faulting page
+     * @param diskPage Its swap slot
+     * @param physicalPage The frame it is loading into
+     * @param window How many pages to read ahead
+     */
+    private void readAhead(PCB process, int virtualPage, int diskPage, int physicalPage, int window) {
+        FaultPattern pattern = process.getFaultPattern();
+        int stride = pattern.getStride();
+        
+        // The faulting process keeps its CPU until it is done, so the CPU's batch is free to use
+        CPU cpu = callerCpu();
+        int[] pages = cpu != null ? cpu.readAheadPages : new int[window + 1];
+        int[] frames = cpu != null ? cpu.readAheadFrames : new int[window + 1];
+        int[] slots = cpu != null ? cpu.readAheadSlots : new int[window + 1];
+        int[] offsets = cpu != null ? cpu.readAheadOffsets : new int[window + 1];
+        frames[0] = physicalPage;
+        slots[0] = diskPage;
+        offsets[0] = physicalPage << geometry.getPageShift();
+        int count = 1;
+        
+        int page = virtualPage;
+        for (int i = 0; i < window; i++) {
+            long pte = process.getPte(page + stride);
+            if ((pte & PageTable.VALID) != 0 && PageTable.frameOf(pte) == -1) {
+                int slot = PageTable.diskSlotOf(pte);
+                if (slot == -1) {
+                    break; // Never written, nothing to read
+                }
+                int frame = memoryManager.allocatePage();
+                if (frame == -1) {
+                    frame = swapOutPage();
+                    if (frame == -1) {
+                        break;
+                    }
+                    directReclaims.incrementAndGet();
+                }
+                pages[count] = page + stride;
+                frames[count] = frame;
+                slots[count] = slot;
+                offsets[count] = frame << geometry.getPageShift();
+                count++;
+            } else if ((pte & PageTable.VALID) == 0) {
+                break; // Past the end of the region
+            }
+            page += stride;
+        }
+        pattern.readAhead(page);
+        
+        swapDevice.readPages(slots, offsets, count, Process.getMemory());
+        for (int i = 1; i < count; i++) {
+            long pte = process.getPte(pages[i]);
+            process.setPte(pages[i], PageTable.withFrame(pte, frames[i]) & ~(PageTable.DIRTY | PageTable.ACCESSED) | PageTable.PREFETCHED);
+            frameTable.assign(frames[i], process, pages[i]);
+        }
+        prefetchedPages.addAndGet(count - 1);
+    }
+    
     /**
      * Swaps out a page to disk to free up physical memory
+     * The replacement policy picks the frame; a clean page whose swap copy is
+     * still current is dropped without writing it
      * @return The freed physical page number, or -1 if failed
      */
     private int swapOutPage() {
-        // For simplicity, we'll just pick a random process and a random page
-        // In a real OS, this would use a more sophisticated algorithm (LRU, etc.)
+        for (int attempt = 0; attempt < frameTable.size(); attempt++) {
+            int physicalPage = frameTable.selectVictim();
+            if (physicalPage == -1) {
+                return -1; // Nothing is swappable
+            }
+            int virtualPage = frameTable.getVirtualPage(physicalPage);
+            PCB process = claimVictim(physicalPage, virtualPage);
+            if (process == null) {
+                continue;
+            }
+            try {
+                long pte = process.getPte(virtualPage);
+                if ((pte & PageTable.DIRTY) == 0 && (pte & PageTable.ON_DISK) != 0) {
+                    cleanEvictions.incrementAndGet();
+                    return physicalPage;
+                }
+                
+                // A page written since it was last saved needs a slot: its old one, or a new one
+                int diskPage = PageTable.diskSlotOf(pte);
+                if (diskPage == -1) {
+                    diskPage = swapSpace.allocate();
+                    if (diskPage == -1) {
+                        unclaimVictim(process, physicalPage, virtualPage);
+                        return -1; // Swap space is full
+                    }
+                    process.swapSlots++;
+                }
+                
+                // Write the page to disk
+                savePageToDisk(physicalPage, diskPage);
+                process.setPte(virtualPage, PageTable.withDiskSlot(pte, diskPage) & ~PageTable.DIRTY);
+                pageOuts.incrementAndGet();
+                
+                // Return the freed physical page
+                return physicalPage;
+            } finally {
+                process.getPageTableLock().unlock();
+            }
+        }
         
-        // Get a list of all processes
-        List<PCB> allProcesses = new ArrayList<>();
-        allProcesses.addAll(realtimeProcesses);
-        allProcesses.addAll(interactiveProcesses);
-        allProcesses.addAll(backgroundProcesses);
-        allProcesses.addAll(sleepingProcesses);
+        return -1; // Couldn't find any page to swap out
+    }
+    
+    /**
+     * Unmaps a page chosen by the replacement policy and takes its frame
+     * A page its owner is still accessing on another CPU is left alone.
+     * @param physicalPage The frame
+     * @param virtualPage The page it held when chosen
+     * @return The owner, with its page table lock held, or null if the page can't be taken now
+     */
+    private PCB claimVictim(int physicalPage, int virtualPage) {
+        PCB process = frameTable.getOwner(physicalPage);
         
-        if (allProcesses.isEmpty()) {
-            return -1;
+        // Skip processes whose page table is busy on another CPU; waiting
+        // here while holding our own page table lock could deadlock
+        if (process == null || !process.getPageTableLock().tryLock()) {
+            return null;
         }
         
-        // Try each process until we find a page to swap out
-        for (int attempt = 0; attempt < allProcesses.size(); attempt++) {
-            // Pick a random process
-            PCB process = allProcesses.get(random.nextInt(allProcesses.size()));
-            
-            // Find a page that's in memory
-            for (int virtualPage = 0; virtualPage < PCB.MAX_VIRTUAL_PAGES; virtualPage++) {
-                VirtualToPhysicalMapping mapping = process.getMapping(virtualPage);
+        // The frame may have been freed or remapped while we were choosing
+        long pte = process.getPte(virtualPage);
+        if (frameTable.getOwner(physicalPage) != process || PageTable.frameOf(pte) != physicalPage) {
+            process.getPageTableLock().unlock();
+            return null;
+        }
+        
+        // Unmap it first so no CPU keeps writing to the frame; leave it
+        // be if the owner is still busy with it on another CPU
+        process.setPte(virtualPage, PageTable.withFrame(pte, -1) & ~(PageTable.ACCESSED | PageTable.PREFETCHED));
+        if (!shootdownTLBs(process.getPid(), virtualPage)) {
+            process.setPte(virtualPage, pte);
+            process.getPageTableLock().unlock();
+            return null;
+        }
+        frameTable.release(physicalPage);
+        if ((pte & PageTable.PREFETCHED) != 0) {
+            prefetchWasted.incrementAndGet();
+            process.getFaultPattern().wasted();
+        }
+        return process;
+    }
+    
+    /**
+     * Maps a claimed page back into its frame, leaving the owner locked
+     * @param process The owner
+     * @param physicalPage The frame
+     * @param virtualPage The page
+     */
+    private void unclaimVictim(PCB process, int physicalPage, int virtualPage) {
+        process.setPte(virtualPage, PageTable.withFrame(process.getPte(virtualPage), physicalPage));
+        frameTable.assign(physicalPage, process, virtualPage);
+    }
+    
+    /**
+     * Gives a faulting process's CPU to the page-out daemon until it has freed a batch of frames,
+     * starting the daemon the first time
+     * The process stays parked, not queued, and gets the CPU straight back, with
+     * the access it faulted in the middle of still marked in use so the daemon
+     * leaves that page alone. While the daemon works for another CPU, waits a
+     * little for it instead, unless a frame is free.
+     * @param process The faulting process, which must not hold its page table lock
+     * @param cpu The CPU it is running on
+     */
+    private void lendCpuToPageOutDaemon(PCB process, CPU cpu) {
+        PCB daemon = startPageOutDaemon();
+        if (daemon == null || daemon == process) {
+            return;
+        }
+        
+        // While it works on another CPU, wait for it rather than evict a page ourselves
+        for (int round = 0; !pageOutDaemonIdle.compareAndSet(true, false); round++) {
+            if (round == SWAP_OUT_ROUNDS || memoryManager.getFreePageCount() > 0) {
+                return;
+            }
+            LockSupport.parkNanos(SWAP_OUT_BACKOFF_NANOS);
+        }
+        daemonWakeups.incrementAndGet();
+        pageOutDonor = process;
+        handOff(process, cpu.switchTo(daemon));
+    }
+    
+    /**
+     * Starts the page-out daemon the first time it is needed
+     * It is never queued on a CPU, and runs only on one a fault lends it, so
+     * at BACKGROUND it still never waits behind busy processes
+     * @return The daemon, or null if another thread is still starting it
+     */
+    private PCB startPageOutDaemon() {
+        if (pageOutDaemonStarted.compareAndSet(false, true)) {
+            Process process = new Process(new PageOutDaemon(this), executionBackend);
+            process.setDaemon();
+            PCB daemon = new PCB(process, Priority.BACKGROUND, geometry.getVirtualPages(), mailboxSize);
+            daemon.run(); // Its thread parks until it is given a CPU
+            processMap.put(daemon.getPid(), daemon);
+            pageOutDaemon = daemon;
+            pageOutDaemonIdle.set(true);
+        }
+        return pageOutDaemon;
+    }
+    
+    /**
+     * Gives the CPU back to the process that lent it, parking the page-out
+     * daemon until a fault lends it one again
+     * Called only from the daemon's own thread
+     */
+    void awaitPageOutWork() {
+        PCB self = callerProcess();
+        if (self == null) {
+            return;
+        }
+        
+        // Remember our CPU before anyone can lend us another one
+        CPU cpu = self.getCpu();
+        self.resetTimeouts();
+        
+        // Take the lender before announcing that we are idle, as the next one sets it after
+        PCB donor = pageOutDonor;
+        pageOutDonor = null;
+        pageOutDaemonIdle.set(true);
+        handOff(self, donor != null ? cpu.switchTo(donor) : schedule(cpu, false));
+    }
+    
+    /**
+     * Evicts one batch of pages towards the high watermark of free frames
+     * One batch per lent CPU keeps the lender's wait short; if it leaves
+     * frames below the low watermark, the next fault lends another CPU.
+     * Called only from the daemon's own thread
+     */
+    void pageOut() {
+        if (memoryManager.getFreePageCount() < pageOutHighWatermark) {
+            pageOutBatch();
+        }
+    }
+    
+    /**
+     * Evicts one batch of pages chosen by the replacement policy
+     * Clean pages are dropped at once. Dirty ones get consecutive swap slots
+     * and go out in one write; their owners stay locked until then so they
+     * cannot fault a page back in before it is on disk.
+     * @return The number of frames freed
+     */
+    private int pageOutBatch() {
+        int batchSize = pageOutBatchSize;
+        if (batchFrames == null || batchFrames.length != batchSize) {
+            batchOwners = new PCB[batchSize];
+            batchFrames = new int[batchSize];
+            batchSlots = new int[batchSize];
+            batchOffsets = new int[batchSize];
+        }
+        int wanted = Math.min(batchSize, pageOutHighWatermark - memoryManager.getFreePageCount());
+        int dropped = 0;
+        int count = 0;
+        try {
+            for (int attempt = 0; attempt < frameTable.size() && dropped + count < wanted; attempt++) {
+                int physicalPage = frameTable.selectVictim();
+                if (physicalPage == -1) {
+                    break; // Nothing is swappable
+                }
+                int virtualPage = frameTable.getVirtualPage(physicalPage);
+                PCB process = claimVictim(physicalPage, virtualPage);
+                if (process == null) {
+                    continue;
+                }
+                long pte = process.getPte(virtualPage);
+                if ((pte & PageTable.DIRTY) == 0 && (pte & PageTable.ON_DISK) != 0) {
+                    process.getPageTableLock().unlock();
+                    memoryManager.freePage(physicalPage);
+                    cleanEvictions.incrementAndGet();
+                    dropped++;
+                    continue;
+                }
                 
-                if (mapping != null && mapping.isInMemory()) {
-                    // Found a page to swap out
-                    int physicalPage = mapping.physicalPageNumber;
-                    
-                    // Write the page to disk
-                    int diskPage = nextSwapPage++;
-                    savePageToDisk(physicalPage, diskPage);
-                    
-                    // Update the mapping
-                    mapping.physicalPageNumber = -1;
-                    mapping.diskPageNumber = diskPage;
-                    
-                    // Return the freed physical page
-                    return physicalPage;
+                // A dirty page gets the next slot, giving up any stale one, so the batch stays sequential
+                int diskPage = swapSpace.allocate();
+                if (diskPage == -1) {
+                    unclaimVictim(process, physicalPage, virtualPage);
+                    process.getPageTableLock().unlock();
+                    break; // Swap space is full
                 }
+                int oldSlot = PageTable.diskSlotOf(pte);
+                if (oldSlot != -1) {
+                    swapSpace.free(oldSlot);
+                } else {
+                    process.swapSlots++;
+                }
+                process.setPte(virtualPage, PageTable.withDiskSlot(pte, diskPage) & ~PageTable.DIRTY);
+                batchOwners[count] = process;
+                batchFrames[count] = physicalPage;
+                batchSlots[count] = diskPage;
+                batchOffsets[count] = physicalPage << geometry.getPageShift();
+                count++;
+            }
+            
+            if (count > 0) {
+                swapDevice.writePages(batchSlots, batchOffsets, count, Process.getMemory());
+                pageOutBatches.incrementAndGet();
+                pageOuts.addAndGet(count);
+                daemonPageOuts.addAndGet(count);
+            }
+        } finally {
+            for (int i = 0; i < count; i++) {
+                batchOwners[i].getPageTableLock().unlock();
+                batchOwners[i] = null;
+                memoryManager.freePage(batchFrames[i]);
             }
         }
-        
-        return -1; // Couldn't find any page to swap out
+        return dropped + count;
+    }
+    
+    /**
+     * Returns a page's swap slot
+     * Must be called with the owning process's page table lock held
+     * @param process The owning process
+     * @param diskPage The slot, or -1 if the page has none
+     */
+    private void freeSwapSlot(PCB process, int diskPage) {
+        if (diskPage != -1) {
+            swapSpace.free(diskPage);
+            process.swapSlots--;
+        }
     }
     
     /**
@@ -476,18 +1916,7 @@ public class Kernel {
      * @param diskPage The disk page number to save to
      */
     private void savePageToDisk(int physicalPage, int diskPage) {
-        int pageSize = Process.PAGE_SIZE;
-        int offset = diskPage * pageSize;
-        
-        // Seek to the right position in the swap file
-        vfs.Seek(swapFileId, offset);
-        
-        // Get the page data
-        byte[] pageData = new byte[pageSize];
-        System.arraycopy(Process.getMemory(), physicalPage * pageSize, pageData, 0, pageSize);
-        
-        // Write to the swap file
-        vfs.Write(swapFileId, pageData);
+        swapDevice.writePage(diskPage, Process.getMemory(), physicalPage << geometry.getPageShift());
     }
     
     /**
@@ -496,17 +1925,7 @@ public class Kernel {
      * @param physicalPage The physical page to load into
      */
     private void loadPageFromDisk(int diskPage, int physicalPage) {
-        int pageSize = Process.PAGE_SIZE;
-        int offset = diskPage * pageSize;
-        
-        // Seek to the right position in the swap file
-        vfs.Seek(swapFileId, offset);
-        
-        // Read from the swap file
-        byte[] pageData = vfs.Read(swapFileId, pageSize);
-        
-        // Copy to physical memory
-        System.arraycopy(pageData, 0, Process.getMemory(), physicalPage * pageSize, pageSize);
+        swapDevice.readPage(diskPage, Process.getMemory(), physicalPage << geometry.getPageShift());
     }
     
     /**
@@ -514,13 +1933,11 @@ public class Kernel {
      * @param physicalPage The physical page to clear
      */
     private void clearPage(int physicalPage) {
-        int pageSize = Process.PAGE_SIZE;
+        int pageSize = geometry.getPageSize();
         int startAddr = physicalPage * pageSize;
         
         // Fill with zeros
-        for (int i = 0; i < pageSize; i++) {
-            Process.getMemory()[startAddr + i] = 0;
-        }
+        Arrays.fill(Process.getMemory(), startAddr, startAddr + pageSize, (byte) 0);
     }
     
     /**
@@ -529,29 +1946,69 @@ public class Kernel {
      * @return Starting virtual address, or -1 if failed
      */
     public int allocateMemory(int size) {
-        if (currentProcess == null || size <= 0) {
+        PCB current = currentProcess();
+        if (current == null || size <= 0) {
             return -1;
         }
         
         // Round up to the nearest page size
-        int pageSize = Process.PAGE_SIZE;
+        int pageSize = geometry.getPageSize();
         int numPages = (size + pageSize - 1) / pageSize;
         
-        // Find contiguous virtual pages
-        int startVirtualPage = currentProcess.findFreeVirtualPages(numPages);
-        if (startVirtualPage == -1) {
-            return -1; // Not enough virtual address space
-        }
-        
-        // Create mappings for each page (lazy allocation - no physical pages yet)
-        for (int i = 0; i < numPages; i++) {
-            VirtualToPhysicalMapping mapping = new VirtualToPhysicalMapping();
-            // Both physical and disk page numbers are -1 (not allocated yet)
-            currentProcess.mapPage(startVirtualPage + i, -1);
+        current.getPageTableLock().lock();
+        try {
+            // Large requests try for a huge page aligned range so whole chunks can be huge pages
+            int startVirtualPage = -1;
+            boolean useHugePages = numPages >= PCB.HUGE_PAGE_PAGES && memoryManager.supportsContiguous();
+            if (useHugePages) {
+                startVirtualPage = current.allocateVirtualPages(numPages, PCB.HUGE_PAGE_PAGES);
+            }
+            if (startVirtualPage == -1) {
+                useHugePages = false;
+                startVirtualPage = current.allocateVirtualPages(numPages, 1);
+            }
+            if (startVirtualPage == -1) {
+                return -1; // Not enough virtual address space
+            }
+            
+            int i = 0;
+            if (useHugePages) {
+                // Back each full chunk with a contiguous block, stopping when none is left
+                // or huge pages and shared memory would pin more than half of physical memory
+                for (; i + PCB.HUGE_PAGE_PAGES <= numPages; i += PCB.HUGE_PAGE_PAGES) {
+                    int base;
+                    // Check the cap and pin the block in one step, so concurrent
+                    // allocations cannot overshoot it together
+                    synchronized (frameTable) {
+                        if (frameTable.getPinnedFrames() + segmentFrames + PCB.HUGE_PAGE_PAGES > geometry.getPhysicalPages() / 2) {
+                            break;
+                        }
+                        base = memoryManager.allocateContiguous(PCB.HUGE_PAGE_ORDER);
+                        if (base == -1) {
+                            break;
+                        }
+                        for (int page = 0; page < PCB.HUGE_PAGE_PAGES; page++) {
+                            frameTable.assignPinned(base + page, current, startVirtualPage + i + page);
+                        }
+                    }
+                    for (int page = 0; page < PCB.HUGE_PAGE_PAGES; page++) {
+                        clearPage(base + page);
+                    }
+                    current.mapHugePage(startVirtualPage + i, base);
+                }
+            }
+            
+            // Create mappings for the remaining pages (lazy allocation - no physical pages yet)
+            for (; i < numPages; i++) {
+                // Both physical and disk page numbers are -1 (not allocated yet)
+                current.mapPage(startVirtualPage + i, -1);
+            }
+            
+            // Return the starting virtual address
+            return startVirtualPage * pageSize;
+        } finally {
+            current.getPageTableLock().unlock();
         }
-        
-        // Return the starting virtual address
-        return startVirtualPage * pageSize;
     }
     
     /**
@@ -561,11 +2018,12 @@ public class Kernel {
      * @return true if successful, false otherwise
      */
     public boolean freeMemory(int pointer, int size) {
-        if (currentProcess == null || pointer < 0 || size <= 0) {
+        PCB current = currentProcess();
+        if (current == null || pointer < 0 || size <= 0) {
             return false;
         }
         
-        int pageSize = Process.PAGE_SIZE;
+        int pageSize = geometry.getPageSize();
         
         // Check if pointer is page-aligned
         if (pointer % pageSize != 0) {
@@ -576,29 +2034,232 @@ public class Kernel {
         int startVirtualPage = pointer / pageSize;
         int numPages = (size + pageSize - 1) / pageSize;
         
-        // Collect physical pages to free
-        int[] physicalPages = new int[numPages];
-        int count = 0;
+        current.getPageTableLock().lock();
+        try {
+            // Visit only the pages that are actually mapped in the range, handing
+            // each contiguous run of them back to the address space in one piece
+            long endVirtualPage = (long) startVirtualPage + numPages;
+            int runStart = -1;
+            int runEnd = -1;
+            int virtualPage = current.nextMappedPage(startVirtualPage);
+            while (virtualPage != -1 && virtualPage < endVirtualPage) {
+                if (virtualPage != runEnd) {
+                    if (runStart != -1) {
+                        current.freeVirtualPages(runStart, runEnd - runStart);
+                    }
+                    runStart = virtualPage;
+                }
+                
+                // Free a huge page whole if the range covers it, otherwise split it first
+                if (current.getHugePage(virtualPage) != -1) {
+                    int regionStart = virtualPage & ~(PCB.HUGE_PAGE_PAGES - 1);
+                    shootdownTLBs(current.getPid(), virtualPage);
+                    if (regionStart == virtualPage && endVirtualPage - virtualPage >= PCB.HUGE_PAGE_PAGES) {
+                        int base = current.unmapHugePage(virtualPage);
+                        for (int i = 0; i < PCB.HUGE_PAGE_PAGES; i++) {
+                            frameTable.release(base + i);
+                        }
+                        memoryManager.freeContiguous(base, PCB.HUGE_PAGE_ORDER);
+                        runEnd = virtualPage + PCB.HUGE_PAGE_PAGES;
+                        virtualPage = current.nextMappedPage(runEnd);
+                        continue;
+                    }
+                    current.demoteHugePage(virtualPage);
+                    
+                    // The split pages are ordinary swappable pages from now on
+                    int base = current.getPhysicalPage(regionStart);
+                    for (int i = 0; i < PCB.HUGE_PAGE_PAGES; i++) {
+                        frameTable.assign(base + i, current, regionStart + i);
+                    }
+                }
+                
+                // Shared memory stays mapped until it is detached
+                long pte = current.getPte(virtualPage);
+                if ((pte & PageTable.SHARED) != 0) {
+                    virtualPage = current.nextMappedPage(virtualPage + 1);
+                    continue;
+                }
+                int physicalPage = PageTable.frameOf(pte);
+                current.unmapPage(virtualPage);
+                shootdownTLBs(current.getPid(), virtualPage);
+                
+                // Free the physical page (or this process's share of it) and the swap slot
+                if (physicalPage != -1) {
+                    frameTable.release(physicalPage);
+                    int references = memoryManager.freePage(physicalPage);
+                    if ((pte & PageTable.COPY_ON_WRITE) != 0) {
+                        noteSoleSharer(physicalPage, virtualPage, references);
+                        current.sharedPages--;
+                    }
+                }
+                freeSwapSlot(current, PageTable.diskSlotOf(pte));
+                runEnd = virtualPage + 1;
+                virtualPage = current.nextMappedPage(runEnd);
+            }
+            if (runStart != -1) {
+                current.freeVirtualPages(runStart, runEnd - runStart);
+            }
+        } finally {
+            current.getPageTableLock().unlock();
+        }
+        adoptSoleSharedFrames();
+        
+        return true;
+    }
+    
+    /**
+     * Creates a named shared memory segment and attaches it to the current process
+     * The segment's frames are allocated, zeroed and mapped up front, and stay
+     * in memory: together with huge pages, segments may pin at most half of it.
+     * The segment lasts until the last process attached to it detaches or exits.
+     * @param name Name other processes attach the segment by
+     * @param size Size in bytes
+     * @return Starting virtual address, or -1 if the name is taken or out of memory
+     */
+    public int createSharedMemory(String name, int size) {
+        PCB current = currentProcess();
+        if (current == null || name == null || size <= 0) {
+            return -1;
+        }
+        int pageSize = geometry.getPageSize();
+        int numPages = (size + pageSize - 1) / pageSize;
+        synchronized (frameTable) {
+            if (frameTable.getPinnedFrames() + segmentFrames + numPages > geometry.getPhysicalPages() / 2) {
+                return -1;
+            }
+            segmentFrames += numPages;
+        }
         
+        int[] frames = new int[numPages];
         for (int i = 0; i < numPages; i++) {
-            int virtualPage = startVirtualPage + i;
-            VirtualToPhysicalMapping mapping = currentProcess.getMapping(virtualPage);
-            
-            if (mapping != null) {
-                if (mapping.isInMemory()) {
-                    physicalPages[count++] = mapping.physicalPageNumber;
+            frames[i] = allocateFrame();
+            if (frames[i] == -1) {
+                memoryManager.freePages(Arrays.copyOf(frames, i));
+                synchronized (frameTable) {
+                    segmentFrames -= numPages;
                 }
-                currentProcess.unmapPage(virtualPage);
+                return -1;
             }
+            clearPage(frames[i]);
         }
         
-        // Free the physical pages
-        if (count > 0) {
-            int[] pagesToFree = new int[count];
-            System.arraycopy(physicalPages, 0, pagesToFree, 0, count);
-            memoryManager.freePages(pagesToFree);
+        SharedMemorySegment segment = new SharedMemorySegment(name, frames);
+        synchronized (sharedSegments) {
+            if (sharedSegments.putIfAbsent(name, segment) != null) {
+                segment = null;
+            }
+        }
+        if (segment == null) {
+            memoryManager.freePages(frames);
+            synchronized (frameTable) {
+                segmentFrames -= numPages;
+            }
+            return -1;
+        }
+        return mapSegment(current, segment);
+    }
+    
+    /**
+     * Attaches an existing shared memory segment to the current process
+     * @param name The segment's name
+     * @return Starting virtual address, or -1 if there is no such segment or no room for it
+     */
+    public int attachSharedMemory(String name) {
+        PCB current = currentProcess();
+        if (current == null || name == null) {
+            return -1;
+        }
+        SharedMemorySegment segment;
+        synchronized (sharedSegments) {
+            segment = sharedSegments.get(name);
+            if (segment == null) {
+                return -1;
+            }
+            segment.attach();
+        }
+        return mapSegment(current, segment);
+    }
+    
+    /**
+     * Detaches a shared memory segment from the current process
+     * The last process to detach a segment frees it
+     * @param pointer The address the segment was attached at
+     * @return true if successful, false if no segment is attached there
+     */
+    public boolean detachSharedMemory(int pointer) {
+        PCB current = currentProcess();
+        int pageSize = geometry.getPageSize();
+        if (current == null || pointer < 0 || pointer % pageSize != 0) {
+            return false;
         }
         
+        int startVirtualPage = pointer / pageSize;
+        SharedMemorySegment segment;
+        current.getPageTableLock().lock();
+        try {
+            segment = current.segments.remove(startVirtualPage);
+            if (segment == null) {
+                return false;
+            }
+            for (int i = 0; i < segment.getPages(); i++) {
+                current.unmapPage(startVirtualPage + i);
+                shootdownTLBs(current.getPid(), startVirtualPage + i);
+                memoryManager.freePage(segment.getFrame(i));
+            }
+            current.sharedPages -= segment.getPages();
+            current.freeVirtualPages(startVirtualPage, segment.getPages());
+        } finally {
+            current.getPageTableLock().unlock();
+        }
+        releaseSegment(segment);
         return true;
     }
+    
+    /**
+     * Maps a segment into a process, which has already been counted as attached
+     * @param process The process
+     * @param segment The segment
+     * @return Starting virtual address, or -1 if the process has no room for it
+     */
+    private int mapSegment(PCB process, SharedMemorySegment segment) {
+        int numPages = segment.getPages();
+        process.getPageTableLock().lock();
+        try {
+            int startVirtualPage = process.allocateVirtualPages(numPages, 1);
+            if (startVirtualPage != -1) {
+                for (int i = 0; i < numPages; i++) {
+                    int frame = segment.getFrame(i);
+                    memoryManager.share(frame);
+                    process.setPte(startVirtualPage + i, PageTable.makePte(frame, -1) | PageTable.SHARED);
+                }
+                process.sharedPages += numPages;
+                process.segments.put(startVirtualPage, segment);
+                return startVirtualPage * geometry.getPageSize();
+            }
+        } finally {
+            process.getPageTableLock().unlock();
+        }
+        releaseSegment(segment);
+        return -1;
+    }
+    
+    /**
+     * Drops one attachment of a segment, freeing the segment if it was the last
+     * Must not be called with the segment registry locked
+     * @param segment The segment
+     */
+    private void releaseSegment(SharedMemorySegment segment) {
+        synchronized (sharedSegments) {
+            if (segment.detach() > 0) {
+                return;
+            }
+            sharedSegments.remove(segment.getName(), segment);
+        }
+        for (int i = 0; i < segment.getPages(); i++) {
+            memoryManager.freePage(segment.getFrame(i));
+        }
+        synchronized (frameTable) {
+            segmentFrames -= segment.getPages();
+        }
+    }
 }
\ No newline at end of file
@@ -1,15 +1,29 @@
 package OperationSystem;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
  * KernelMessage - Represents a message passed between processes
+ * A message normally copies its data in and out, so sender and receiver never
+ * share an array. Messages made with wrap and sent with OS.transferMessage
+ * instead hand the array itself from sender to receiver, who reads it through
+ * getDataView or takes it with takeData, so the data is never copied.
+ *
+ * Messages the kernel delivers come from its MessagePool, with data in a
+ * pooled array that may be longer than the data. A receiver that is done
+ * with one calls recycle, so a steady flow of messages allocates nothing.
  */
 public class KernelMessage {
+    private static final byte[] EMPTY = new byte[0];
+    
     private int senderPid;
     private int targetPid;
     private int what;
     private byte[] data;
+    private int length; // Bytes of data in use
+    private final MessagePool pool; // Where it is recycled to, null if it was not handed out by one
+    private boolean recycled;
     
     /**
      * Creates a new message
@@ -21,7 +35,36 @@ public class KernelMessage {
         this.senderPid = -1; // Will be set by the kernel
         this.targetPid = targetPid;
         this.what = what;
-        this.data = data != null ? Arrays.copyOf(data, data.length) : new byte[0];
+        this.data = data != null ? Arrays.copyOf(data, data.length) : EMPTY;
+        this.length = this.data.length;
+        this.pool = null;
+    }
+    
+    /**
+     * Creates an empty message belonging to a pool
+     * @param pool The pool it is recycled to
+     */
+    KernelMessage(MessagePool pool) {
+        this.senderPid = -1;
+        this.data = EMPTY;
+        this.pool = pool;
+    }
+    
+    /**
+     * Creates a new message that owns the given array rather than a copy of it
+     * The caller hands the array over and must not use it afterwards
+     * @param targetPid The process ID of the target
+     * @param what An integer indicating the message type
+     * @param data The message data
+     * @return The message
+     */
+    public static KernelMessage wrap(int targetPid, int what, byte[] data) {
+        KernelMessage message = new KernelMessage(targetPid, what, null);
+        if (data != null) {
+            message.data = data;
+            message.length = data.length;
+        }
+        return message;
     }
     
     /**
@@ -32,7 +75,49 @@ public class KernelMessage {
         this.senderPid = other.senderPid;
         this.targetPid = other.targetPid;
         this.what = other.what;
-        this.data = Arrays.copyOf(other.data, other.data.length);
+        this.data = Arrays.copyOf(other.data, other.length);
+        this.length = other.length;
+        this.pool = null;
+    }
+    
+    /**
+     * Refills a pooled message (for the pool)
+     * @param targetPid The process ID of the target
+     * @param what An integer indicating the message type
+     * @param data The array holding the data, now owned by the message
+     * @param length Bytes of data at the start of the array
+     */
+    void set(int targetPid, int what, byte[] data, int length) {
+        this.senderPid = -1;
+        this.targetPid = targetPid;
+        this.what = what;
+        this.data = data;
+        this.length = length;
+        this.recycled = false;
+    }
+    
+    /**
+     * Moves this message into another one, leaving this one empty
+     * Used by the kernel to deliver a message without copying its data, while
+     * the sender's message no longer reaches the array the receiver now owns
+     * @param destination The message that gets this one's sender, target, type and data
+     */
+    void moveTo(KernelMessage destination) {
+        destination.set(targetPid, what, data, length);
+        destination.senderPid = senderPid;
+        data = EMPTY;
+        length = 0;
+    }
+    
+    /**
+     * Takes the array behind the data, whatever its length (for the pool)
+     * @return The array
+     */
+    byte[] releaseData() {
+        byte[] released = data;
+        data = EMPTY;
+        length = 0;
+        return released;
     }
     
     /**
@@ -72,7 +157,62 @@ public class KernelMessage {
      * @return The message data
      */
     public byte[] getData() {
-        return Arrays.copyOf(data, data.length);
+        return Arrays.copyOf(data, length);
+    }
+    
+    /**
+     * Gets the length of the message data
+     * @return The length in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+    
+    /**
+     * Copies the message data into an array the caller already has
+     * @param destination The array to copy into
+     * @param offset Where in it the data starts
+     * @return The number of bytes copied
+     */
+    public int readData(byte[] destination, int offset) {
+        System.arraycopy(data, 0, destination, offset, length);
+        return length;
+    }
+    
+    /**
+     * Gets a read-only view of the message data, without copying it
+     * Only the small view object is allocated; readData allocates nothing
+     * @return A buffer over the data, positioned at its start
+     */
+    public ByteBuffer getDataView() {
+        return ByteBuffer.wrap(data, 0, length).asReadOnlyBuffer();
+    }
+    
+    /**
+     * Takes the message data, leaving the message empty
+     * The caller owns the array from then on, e.g. to wrap it in a message of its own.
+     * It is not copied unless it sits in a longer pooled array.
+     * @return The message data
+     */
+    public byte[] takeData() {
+        if (data.length != length) {
+            byte[] taken = Arrays.copyOf(data, length);
+            length = 0; // The pooled array stays for recycle
+            return taken;
+        }
+        return releaseData();
+    }
+    
+    /**
+     * Hands a received message back to the kernel for reuse, along with its data
+     * Neither the message nor a view of its data may be used afterwards.
+     * Messages the kernel did not hand out are left to the garbage collector.
+     */
+    public void recycle() {
+        if (pool != null && !recycled) {
+            recycled = true;
+            pool.release(this);
+        }
     }
     
     @Override
@@ -81,7 +221,7 @@ public class KernelMessage {
                 "senderPid=" + senderPid +
                 ", targetPid=" + targetPid +
                 ", what=" + what +
-                ", data=" + Arrays.toString(data) +
+                ", data=" + Arrays.toString(Arrays.copyOf(data, length)) +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,118 @@
+package OperationSystem;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * KernelStressTest - Hammers process creation, messaging and memory allocation
+ * from many processes at once; run it with -Dos.cpus=N to get real parallelism
+ */
+public class KernelStressTest implements Runnable {
+    private static final int MSG_DONE = 1;
+    private static final int SPAWNERS = 8;
+    private static final int WORKERS_PER_SPAWNER = 8;
+    private static final int ROUNDS = 20;
+    private static final int PAGES_PER_ROUND = 2;
+
+    private static final AtomicInteger errors = new AtomicInteger();
+
+    @Override
+    public void run() {
+        System.out.println("KernelStressTest: Starting stress test...");
+        int collectorPid = OS.getPid();
+        long start = System.nanoTime();
+
+        // Spawners create the workers concurrently with each other
+        for (int i = 0; i < SPAWNERS; i++) {
+            OS.createProcess(new Spawner(collectorPid));
+        }
+
+        // Every worker reports once per round
+        int expected = SPAWNERS * WORKERS_PER_SPAWNER * ROUNDS;
+        int received = 0;
+        while (received < expected) {
+            KernelMessage message = OS.waitForMessage();
+            if (message != null && message.getWhat() == MSG_DONE) {
+                received++;
+            }
+            if (message != null) {
+                message.recycle();
+            }
+        }
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("KernelStressTest: Received " + received + " of " + expected
+                + " messages in " + elapsedMillis + " ms");
+        if (errors.get() != 0) {
+            System.out.println("KernelStressTest: ERROR - " + errors.get() + " memory errors");
+        }
+        System.out.println("KernelStressTest: Stress test complete");
+    }
+
+    /**
+     * Creates a batch of workers
+     */
+    private static class Spawner implements Runnable {
+        private final int collectorPid;
+
+        Spawner(int collectorPid) {
+            this.collectorPid = collectorPid;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < WORKERS_PER_SPAWNER; i++) {
+                if (OS.createProcess(new Worker(collectorPid)) == -1) {
+                    errors.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Allocates, fills, verifies and frees memory, then reports to the collector
+     */
+    private static class Worker implements Runnable {
+        private final int collectorPid;
+
+        Worker(int collectorPid) {
+            this.collectorPid = collectorPid;
+        }
+
+        @Override
+        public void run() {
+            Process process = new Process(this);
+            int pid = OS.getPid();
+            int size = PAGES_PER_ROUND * OS.getPageSize();
+            byte[] report = new byte[1];
+
+            for (int round = 0; round < ROUNDS; round++) {
+                try {
+                    int address = OS.allocateMemory(size);
+                    if (address == -1) {
+                        errors.incrementAndGet();
+                    } else {
+                        // Stamp every page with something only this worker would write
+                        for (int page = 0; page < PAGES_PER_ROUND; page++) {
+                            int offset = address + page * OS.getPageSize();
+                            process.write(offset, (byte) pid);
+                            process.write(offset + 1, (byte) round);
+                        }
+                        for (int page = 0; page < PAGES_PER_ROUND; page++) {
+                            int offset = address + page * OS.getPageSize();
+                            if (process.read(offset) != (byte) pid || process.read(offset + 1) != (byte) round) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                        OS.freeMemory(address, size);
+                    }
+                } catch (MemoryAccessException e) {
+                    errors.incrementAndGet();
+                }
+
+                report[0] = (byte) round;
+                OS.sendMessage(collectorPid, MSG_DONE, report, 0, report.length);
+                OS.cooperate();
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package OperationSystem;
+
+/**
+ * What sending a message does when the target's mailbox is full
+ */
+public enum MailboxPolicy {
+    BLOCK, // The sender waits until the target takes a message
+    DROP,  // The oldest queued message is discarded to make room
+    FAIL;  // The message is not sent and the send reports failure
+
+    /**
+     * Looks up a policy by name ("block", "drop" or "fail")
+     * @param name The policy name
+     * @return The policy
+     */
+    public static MailboxPolicy forName(String name) {
+        for (MailboxPolicy policy : values()) {
+            if (policy.name().equalsIgnoreCase(name)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown mailbox policy: " + name);
+    }
+}
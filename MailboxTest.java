@@ -0,0 +1,132 @@
+package OperationSystem;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MailboxTest - Floods one slow receiver from several senders so its mailbox
+ * fills and the senders block; every message must arrive, in order per sender.
+ * Run it with the default -Dos.mailboxFull=block, and with -Dos.cpus=N and a
+ * small -Dos.mailboxSize to make the senders block often
+ */
+public class MailboxTest implements Runnable {
+    private static final int SENDERS = 4;
+    private static final int MESSAGES_PER_SENDER = 1000;
+    private static final int TIMEOUT_MILLIS = 10000;
+
+    private static final AtomicInteger received = new AtomicInteger();
+    private static volatile boolean finished;
+
+    @Override
+    public void run() {
+        System.out.println("MailboxTest: Starting mailbox test...");
+        int receiverPid = OS.getPid();
+        long blockedBefore = OS.getBlockedSends();
+        checkFailedTransfer(receiverPid);
+
+        for (int i = 0; i < SENDERS; i++) {
+            OS.createProcess(new Sender(receiverPid, i));
+        }
+        OS.createProcess(new Watchdog());
+
+        // Take messages slower than they are sent, so the mailbox stays full
+        int[] nextSequence = new int[SENDERS];
+        byte[] data = new byte[4];
+        int expected = SENDERS * MESSAGES_PER_SENDER;
+        while (received.get() < expected) {
+            KernelMessage message = OS.waitForMessage();
+            if (message == null) {
+                continue;
+            }
+            int sender = message.getWhat();
+            message.readData(data, 0);
+            message.recycle();
+            int sequence = (data[0] & 0xFF) | (data[1] & 0xFF) << 8 | (data[2] & 0xFF) << 16 | data[3] << 24;
+            if (sender < 0 || sender >= SENDERS || sequence != nextSequence[sender]) {
+                System.out.println("MailboxTest: ERROR - Message " + sequence + " from sender " + sender
+                        + " out of order");
+            } else {
+                nextSequence[sender]++;
+            }
+            received.incrementAndGet();
+            OS.cooperate();
+        }
+        finished = true;
+
+        System.out.println("MailboxTest: Received " + received.get() + " of " + expected
+                + " messages, senders blocked " + (OS.getBlockedSends() - blockedBefore) + " times");
+        System.out.println("MailboxTest: Mailbox test complete");
+    }
+
+    /**
+     * Checks that a transfer that fails leaves the data with the sender, so it can be sent again
+     * @param receiverPid This process, which the retry goes to
+     */
+    private static void checkFailedTransfer(int receiverPid) {
+        byte[] data = {1, 2, 3, 4};
+        KernelMessage message = KernelMessage.wrap(Integer.MAX_VALUE, 0, data);
+        if (OS.transferMessage(message)) {
+            System.out.println("MailboxTest: ERROR - Transferred a message to a process that doesn't exist");
+            return;
+        }
+        byte[] kept = message.takeData();
+        if (kept != data) {
+            System.out.println("MailboxTest: ERROR - Failed transfer lost the sender's data");
+            return;
+        }
+        if (!OS.transferMessage(KernelMessage.wrap(receiverPid, SENDERS, kept))) {
+            System.out.println("MailboxTest: ERROR - Retried transfer failed");
+            return;
+        }
+        KernelMessage received = OS.waitForMessage();
+        if (received == null || received.getWhat() != SENDERS || received.getLength() != 4
+                || received.getData()[3] != 4) {
+            System.out.println("MailboxTest: ERROR - Retried transfer arrived wrong: " + received);
+        } else {
+            System.out.println("MailboxTest: Failed transfer kept its data and was sent again");
+        }
+        if (received != null) {
+            received.recycle();
+        }
+    }
+
+    /**
+     * Sends numbered messages as fast as the receiver's mailbox lets it
+     */
+    private static class Sender implements Runnable {
+        private final int receiverPid;
+        private final int index;
+
+        Sender(int receiverPid, int index) {
+            this.receiverPid = receiverPid;
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            byte[] data = new byte[4];
+            for (int sequence = 0; sequence < MESSAGES_PER_SENDER; sequence++) {
+                data[0] = (byte) sequence;
+                data[1] = (byte) (sequence >> 8);
+                data[2] = (byte) (sequence >> 16);
+                data[3] = (byte) (sequence >> 24);
+                if (!OS.sendMessage(receiverPid, index, data, 0, data.length)) {
+                    System.out.println("MailboxTest: ERROR - Sender " + index + " failed to send message " + sequence);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports senders left blocked on the mailbox forever
+     */
+    private static class Watchdog implements Runnable {
+        @Override
+        public void run() {
+            OS.sleep(TIMEOUT_MILLIS);
+            if (!finished) {
+                System.out.println("MailboxTest: ERROR - Only " + received.get() + " of "
+                        + SENDERS * MESSAGES_PER_SENDER + " messages arrived; a blocked sender was never woken");
+            }
+        }
+    }
+}
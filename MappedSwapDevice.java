@@ -0,0 +1,102 @@
+package OperationSystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * MappedSwapDevice - Swap file mapped into memory with FileChannel.map
+ * Pages are copied directly between physical memory and the mapping, so a
+ * page-in or page-out is a memory copy with no system call and no garbage;
+ * the operating system writes the pages back in the background. The file is
+ * mapped in fixed-size segments as slots are first used, so it only grows
+ * as far as the highest slot. Copies use absolute offsets and never touch
+ * a buffer's position, so different slots can be copied concurrently.
+ */
+public class MappedSwapDevice implements SwapDevice {
+    private static final int SEGMENT_PAGES = 1024;
+
+    private final FileChannel channel;
+    private final int pageSize;
+    private final int segmentPages;                // Slots per segment
+    private volatile MappedByteBuffer[] segments;  // Replaced under this, read without locking
+
+    /**
+     * Opens and maps the swap file
+     * @param path Path of the swap file (created, or emptied if it exists)
+     * @param pageSize Bytes per slot
+     */
+    public MappedSwapDevice(String path, int pageSize) {
+        this.pageSize = pageSize;
+        this.segmentPages = Math.max(1, Math.min(SEGMENT_PAGES, Integer.MAX_VALUE / pageSize));
+        this.segments = new MappedByteBuffer[0];
+        try {
+            channel = FileChannel.open(Path.of(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open swap file " + path, e);
+        }
+    }
+
+    @Override
+    public void writePage(int slot, byte[] memory, int offset) {
+        segmentOf(slot).put((slot % segmentPages) * pageSize, memory, offset, pageSize);
+    }
+
+    @Override
+    public void readPage(int slot, byte[] memory, int offset) {
+        segmentOf(slot).get((slot % segmentPages) * pageSize, memory, offset, pageSize);
+    }
+
+    @Override
+    public synchronized void force() {
+        for (MappedByteBuffer segment : segments) {
+            if (segment != null) {
+                segment.force();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Gets the segment holding a slot, mapping it (and growing the file) on first use
+    private MappedByteBuffer segmentOf(int slot) {
+        int index = slot / segmentPages;
+        MappedByteBuffer[] current = segments;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        return mapSegment(index);
+    }
+
+    private synchronized MappedByteBuffer mapSegment(int index) {
+        MappedByteBuffer[] current = segments;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        long size = (long) segmentPages * pageSize;
+        MappedByteBuffer segment;
+        try {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, index * size, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map swap segment " + index, e);
+        }
+
+        // Publish a new array so readers never see a half-built one
+        MappedByteBuffer[] grown = Arrays.copyOf(current, Math.max(index + 1, current.length));
+        grown[index] = segment;
+        segments = grown;
+        return segment;
+    }
+}
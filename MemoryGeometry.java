@@ -0,0 +1,98 @@
+package OperationSystem;
+
+/**
+ * MemoryGeometry - Page size, physical memory size and per-process virtual
+ * address space of one machine
+ * The kernel takes one at construction and hands it to everything that
+ * needs to know how memory is laid out, so there is a single source of truth.
+ * Physical memory is one Java array and addresses are ints, so both the
+ * physical memory and each address space are limited to just under 2GB.
+ */
+public final class MemoryGeometry {
+    public static final int DEFAULT_PAGE_SIZE = 1024;               // 1KB pages
+    public static final long DEFAULT_PHYSICAL_MEMORY = 1024 * 1024; // 1MB total memory
+    public static final long DEFAULT_VIRTUAL_MEMORY = 100 * 1024;   // 100 pages per process
+
+    private static final long MAX_MEMORY = Integer.MAX_VALUE - 8;   // Largest byte[] the JVM allows
+
+    private final int pageSize;
+    private final int pageShift;
+    private final int physicalPages;
+    private final int virtualPages;
+
+    public MemoryGeometry() {
+        this(DEFAULT_PAGE_SIZE, DEFAULT_PHYSICAL_MEMORY, DEFAULT_VIRTUAL_MEMORY);
+    }
+
+    /**
+     * Creates a memory geometry
+     * @param pageSize Page size in bytes (a power of two)
+     * @param physicalMemory Physical memory in bytes (a multiple of the page size)
+     * @param virtualMemory Size of each process's address space in bytes (a multiple of the page size)
+     */
+    public MemoryGeometry(int pageSize, long physicalMemory, long virtualMemory) {
+        if (pageSize <= 0 || Integer.bitCount(pageSize) != 1) {
+            throw new IllegalArgumentException("Page size must be a power of two: " + pageSize);
+        }
+        if (physicalMemory < pageSize || physicalMemory % pageSize != 0 || physicalMemory > MAX_MEMORY) {
+            throw new IllegalArgumentException("Physical memory must be a whole number of pages below 2GB: " + physicalMemory);
+        }
+        if (virtualMemory < pageSize || virtualMemory % pageSize != 0 || virtualMemory > Integer.MAX_VALUE + 1L
+                || virtualMemory / pageSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Address space must be a whole number of pages up to 2GB: " + virtualMemory);
+        }
+        if (physicalMemory / pageSize > PageTable.MAX_FRAMES) {
+            throw new IllegalArgumentException("Too many physical pages for a page table entry: " + physicalMemory / pageSize);
+        }
+        this.pageSize = pageSize;
+        this.pageShift = Integer.numberOfTrailingZeros(pageSize);
+        this.physicalPages = (int) (physicalMemory / pageSize);
+        this.virtualPages = (int) (virtualMemory / pageSize);
+    }
+
+    /**
+     * Gets the page size
+     * @return Bytes per page
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Gets log2 of the page size, for turning addresses into page numbers with a shift
+     * @return The page shift
+     */
+    public int getPageShift() {
+        return pageShift;
+    }
+
+    /**
+     * Gets the number of physical pages (frames)
+     * @return The physical page count
+     */
+    public int getPhysicalPages() {
+        return physicalPages;
+    }
+
+    /**
+     * Gets the number of virtual pages in each process's address space
+     * @return The virtual page count
+     */
+    public int getVirtualPages() {
+        return virtualPages;
+    }
+
+    /**
+     * Gets the size of physical memory
+     * @return Physical memory in bytes
+     */
+    public int getPhysicalMemory() {
+        return physicalPages << pageShift;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryGeometry[pageSize=" + pageSize + ", physicalPages=" + physicalPages
+                + ", virtualPages=" + virtualPages + "]";
+    }
+}
@@ -1,106 +1,275 @@
 package OperationSystem;
 
-import java.util.Random;
-
 /**
  * MemoryManager - Handles physical memory allocation
+ * Free pages are tracked in a bitmap (one bit per page, set = free) with a
+ * summary bitmap on top (one bit per word, set = word has a free page), so
+ * finding a free page costs O(pages / 4096) in the worst case and usually O(1).
+ * In buddy mode a BuddyAllocator picks the pages instead, which also allows
+ * physically contiguous multi-page blocks (huge pages); the bitmap is still
+ * kept up to date so both modes answer isInUse the same way.
+ * Every allocated page carries a reference count, so a page shared by
+ * several processes (copy-on-write after a fork) is only freed once the
+ * last of them frees it.
  */
 public class MemoryManager {
-    private static final int PAGE_SIZE = 1024; // 1KB pages
-    private static final int TOTAL_PAGES = 1024; // 1MB total memory
-    
-    private boolean[] pageInUse; // Tracks which physical pages are in use
-    private Random random;
-    
+    private int totalPages;
+    private long[] freeBits;    // Bit i of word w is set when page w * 64 + i is free
+    private long[] summaryBits; // Bit i of word s is set when freeBits[s * 64 + i] != 0
+    private int[] references;   // Holders of each page, 0 when free
+    private int freePageCount;
+    private int searchHint;     // Summary word to start the next search at
+    private BuddyAllocator buddy; // Null in plain bitmap mode
+
     public MemoryManager() {
-        pageInUse = new boolean[TOTAL_PAGES];
-        random = new Random();
+        this(new MemoryGeometry().getPhysicalPages());
+    }
+
+    /**
+     * Creates a memory manager for a given amount of physical memory
+     * @param totalPages Number of physical pages
+     */
+    public MemoryManager(int totalPages) {
+        this(totalPages, false);
+    }
+
+    /**
+     * Creates a memory manager, optionally in buddy mode
+     * @param totalPages Number of physical pages
+     * @param buddyMode true to allocate through a buddy system so contiguous blocks are available
+     */
+    public MemoryManager(int totalPages, boolean buddyMode) {
+        if (totalPages <= 0) {
+            throw new IllegalArgumentException("Physical memory must have at least one page");
+        }
+        this.totalPages = totalPages;
+        freeBits = new long[(totalPages + 63) >>> 6];
+        summaryBits = new long[(freeBits.length + 63) >>> 6];
+
+        // Every page starts out free; the last word may be partial
+        for (int w = 0; w < freeBits.length; w++) {
+            int pagesInWord = Math.min(64, totalPages - (w << 6));
+            freeBits[w] = pagesInWord == 64 ? -1L : (1L << pagesInWord) - 1;
+            summaryBits[w >>> 6] |= 1L << w;
+        }
+        references = new int[totalPages];
+        freePageCount = totalPages;
+        searchHint = 0;
+        buddy = buddyMode ? new BuddyAllocator(totalPages) : null;
     }
-    
+
     /**
      * Allocates the specified number of physical pages
      * @param numPages Number of pages to allocate
      * @return Array of allocated physical page numbers, or null if not enough memory
      */
-    public int[] allocatePages(int numPages) {
+    public synchronized int[] allocatePages(int numPages) {
         if (numPages <= 0) {
             return new int[0];
         }
-        
-        // Count available pages
-        int availablePages = 0;
-        for (int i = 0; i < TOTAL_PAGES; i++) {
-            if (!pageInUse[i]) {
-                availablePages++;
-            }
-        }
-        
+
         // Check if we have enough memory
-        if (availablePages < numPages) {
+        if (freePageCount < numPages) {
             return null; // Not enough memory
         }
-        
+
         // Allocate pages
         int[] allocatedPages = new int[numPages];
-        int count = 0;
-        
-        for (int i = 0; i < TOTAL_PAGES && count < numPages; i++) {
-            if (!pageInUse[i]) {
-                pageInUse[i] = true;
-                allocatedPages[count++] = i;
-            }
+        for (int i = 0; i < numPages; i++) {
+            allocatedPages[i] = allocatePage();
         }
-        
+
         return allocatedPages;
     }
-    
+
     /**
      * Frees the specified physical pages
      * @param pages Array of physical page numbers to free
      */
-    public void freePages(int[] pages) {
+    public synchronized void freePages(int[] pages) {
         if (pages == null) {
             return;
         }
-        
+
         for (int page : pages) {
-            if (page >= 0 && page < TOTAL_PAGES) {
-                pageInUse[page] = false;
-            }
+            freePage(page);
         }
     }
-    
+
+    /**
+     * Drops one reference to a physical page, freeing it when none are left
+     * Freeing a page that is already free is ignored
+     * @param page The physical page number
+     * @return The number of references left, 0 once the page is free
+     */
+    public synchronized int freePage(int page) {
+        if (page < 0 || page >= totalPages) {
+            return 0;
+        }
+
+        if (references[page] > 1) {
+            return --references[page]; // Still shared
+        }
+        if (!markFree(page)) {
+            return 0; // Already free
+        }
+        if (buddy != null) {
+            buddy.free(page, 0);
+        }
+        return 0;
+    }
+
     /**
-     * Gets a random free physical page
+     * Allocates a single free physical page
      * @return A free physical page number, or -1 if none available
      */
-    public int getRandomFreePage() {
-        // Count free pages
-        int freePages = 0;
-        for (int i = 0; i < TOTAL_PAGES; i++) {
-            if (!pageInUse[i]) {
-                freePages++;
+    public synchronized int allocatePage() {
+        if (freePageCount == 0) {
+            return -1;
+        }
+
+        if (buddy != null) {
+            int page = buddy.allocate(0);
+            markUsed(page);
+            return page;
+        }
+
+        // Walk the summary from the hint, wrapping around once
+        for (int i = 0; i < summaryBits.length; i++) {
+            int s = searchHint + i;
+            if (s >= summaryBits.length) {
+                s -= summaryBits.length;
+            }
+            if (summaryBits[s] == 0) {
+                continue;
             }
+
+            int word = (s << 6) + Long.numberOfTrailingZeros(summaryBits[s]);
+            int page = (word << 6) + Long.numberOfTrailingZeros(freeBits[word]);
+
+            freeBits[word] &= freeBits[word] - 1; // Clear lowest set bit
+            if (freeBits[word] == 0) {
+                summaryBits[s] &= ~(1L << word);
+            }
+            references[page] = 1;
+            freePageCount--;
+            searchHint = s;
+            return page;
         }
-        
-        if (freePages == 0) {
+
+        return -1; // Should never reach here
+    }
+
+    /**
+     * Allocates physically contiguous pages, aligned to their size (buddy mode only)
+     * @param order Log2 of the number of pages
+     * @return The first page of the block, or -1 if unavailable
+     */
+    public synchronized int allocateContiguous(int order) {
+        if (buddy == null) {
             return -1;
         }
-        
-        // Select a random free page
-        int target = random.nextInt(freePages);
-        int count = 0;
-        
-        for (int i = 0; i < TOTAL_PAGES; i++) {
-            if (!pageInUse[i]) {
-                if (count == target) {
-                    pageInUse[i] = true;
-                    return i;
-                }
-                count++;
+        int page = buddy.allocate(order);
+        if (page != -1) {
+            for (int i = 0; i < 1 << order; i++) {
+                markUsed(page + i);
             }
         }
-        
-        return -1; // Should never reach here
+        return page;
+    }
+
+    /**
+     * Frees a block returned by allocateContiguous
+     * @param page The first page of the block
+     * @param order Log2 of the number of pages
+     */
+    public synchronized void freeContiguous(int page, int order) {
+        if (buddy == null) {
+            return;
+        }
+        for (int i = 0; i < 1 << order; i++) {
+            markFree(page + i);
+        }
+        buddy.free(page, order);
+    }
+
+    /**
+     * Checks if contiguous multi-page blocks can be allocated
+     * @return true in buddy mode
+     */
+    public boolean supportsContiguous() {
+        return buddy != null;
+    }
+
+    /**
+     * Adds a reference to an allocated page, so it takes one more freePage to free it
+     * @param page The physical page number
+     * @return true if the page was allocated, false if it is free
+     */
+    public synchronized boolean share(int page) {
+        if (page < 0 || page >= totalPages || references[page] == 0) {
+            return false;
+        }
+        references[page]++;
+        return true;
+    }
+
+    /**
+     * Gets the number of references to a physical page
+     * @param page The physical page number
+     * @return How many holders must free it before it is free, 0 if it is free
+     */
+    public synchronized int getReferences(int page) {
+        return page >= 0 && page < totalPages ? references[page] : 0;
+    }
+
+    /**
+     * Checks if a physical page is currently allocated
+     * @param page The physical page number
+     * @return true if the page is in use
+     */
+    public synchronized boolean isInUse(int page) {
+        return page >= 0 && page < totalPages && (freeBits[page >>> 6] & (1L << page)) == 0;
+    }
+
+    /**
+     * Gets the number of free physical pages
+     * @return The free page count
+     */
+    public synchronized int getFreePageCount() {
+        return freePageCount;
+    }
+
+    /**
+     * Gets the number of physical pages
+     * @return The total page count
+     */
+    public int getTotalPages() {
+        return totalPages;
+    }
+
+    // Clears a page's free bit; the page must be free
+    private void markUsed(int page) {
+        int word = page >>> 6;
+        freeBits[word] &= ~(1L << page);
+        if (freeBits[word] == 0) {
+            summaryBits[word >>> 6] &= ~(1L << word);
+        }
+        references[page] = 1;
+        freePageCount--;
+    }
+
+    // Sets a page's free bit, returning false if it was already free
+    private boolean markFree(int page) {
+        int word = page >>> 6;
+        long bit = 1L << page;
+        if ((freeBits[word] & bit) != 0) {
+            return false;
+        }
+        freeBits[word] |= bit;
+        summaryBits[word >>> 6] |= 1L << word;
+        references[page] = 0;
+        freePageCount++;
+        return true;
     }
-}
\ No newline at end of file
+}
@@ -56,6 +56,23 @@ public class MemoryTest implements Runnable {
                 // Free the second allocation
                 boolean freed = OS.freeMemory(address2, 2048);
                 System.out.println("MemoryTest: Freed second allocation: " + freed);
+                System.out.println("MemoryTest: Free extents: " + OS.getFreeExtentCount() +
+                                  ", largest: " + OS.getLargestFreeExtent() + " pages" +
+                                  ", fragmentation: " + OS.getFragmentation());
+            }
+            
+            // Negative lengths and ranges that wrap around are rejected, not ignored
+            try {
+                process.fill(address1, -1, (byte) 0);
+                System.out.println("MemoryTest: ERROR - fill accepted a negative length");
+            } catch (IndexOutOfBoundsException e) {
+                System.out.println("MemoryTest: Correctly rejected negative fill length");
+            }
+            try {
+                process.memcpy(address1, Integer.MAX_VALUE - 10, 100);
+                System.out.println("MemoryTest: ERROR - memcpy accepted a range past the last address");
+            } catch (MemoryAccessException e) {
+                System.out.println("MemoryTest: Correctly caught exception: " + e.getMessage());
             }
             
             // Try to access memory outside our allocation (should throw exception)
@@ -70,6 +87,11 @@ public class MemoryTest implements Runnable {
             boolean freed = OS.freeMemory(address1, 1024);
             System.out.println("MemoryTest: Freed first allocation: " + freed);
             
+            // With everything freed, the holes should have merged back into one
+            if (OS.getFreeExtentCount() != 1 || OS.getFragmentation() != 0.0) {
+                System.out.println("MemoryTest: ERROR - Free space still in " + OS.getFreeExtentCount() + " extents");
+            }
+            
             // Try to access freed memory (should throw exception)
             try {
                 process.read(address1);
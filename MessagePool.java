@@ -0,0 +1,78 @@
+package OperationSystem;
+
+/**
+ * MessagePool - Recycles the messages the kernel delivers
+ * The kernel builds every message it queues from a spare message and a data
+ * array out of its buffer pool. Both come back when the receiver recycles the
+ * message, so once the pool has warmed up, sending and receiving allocate
+ * nothing.
+ */
+public class MessagePool {
+    private final RingBuffer<KernelMessage> messages;
+    private final BufferPool buffers;
+
+    /**
+     * Creates an empty pool
+     * @param spareMessages Most spare messages kept
+     * @param buffersPerClass Most spare arrays kept in each buffer size class
+     */
+    public MessagePool(int spareMessages, int buffersPerClass) {
+        messages = new RingBuffer<>(spareMessages);
+        buffers = new BufferPool(buffersPerClass);
+    }
+
+    /**
+     * Gets a message holding a copy of some data
+     * @param targetPid The process ID of the target
+     * @param what An integer indicating the message type
+     * @param data The array holding the data
+     * @param offset Where in it the data starts
+     * @param length Bytes of data
+     * @return The message
+     */
+    public KernelMessage obtain(int targetPid, int what, byte[] data, int offset, int length) {
+        byte[] buffer = buffers.obtain(length);
+        System.arraycopy(data, offset, buffer, 0, length);
+        KernelMessage message = spare();
+        message.set(targetPid, what, buffer, length);
+        return message;
+    }
+
+    /**
+     * Gets a message holding a copy of another message's target, type and data
+     * @param source The message to copy
+     * @return The message
+     */
+    public KernelMessage obtainCopy(KernelMessage source) {
+        byte[] buffer = buffers.obtain(source.getLength());
+        int length = source.readData(buffer, 0);
+        KernelMessage message = spare();
+        message.set(source.getTargetPid(), source.getWhat(), buffer, length);
+        return message;
+    }
+
+    /**
+     * Gets a message that the contents of another are moved into, without copying the data
+     * @param source The message to move, left empty
+     * @return The message
+     */
+    public KernelMessage obtainMoved(KernelMessage source) {
+        KernelMessage message = spare();
+        source.moveTo(message);
+        return message;
+    }
+
+    /**
+     * Takes back a message and its data array
+     * @param message A message this pool handed out, not used afterwards
+     */
+    void release(KernelMessage message) {
+        buffers.release(message.releaseData());
+        messages.offer(message);
+    }
+
+    private KernelMessage spare() {
+        KernelMessage message = messages.poll();
+        return message != null ? message : new KernelMessage(this);
+    }
+}
@@ -4,7 +4,38 @@ package OperationSystem;
  * Simulates the interrupt mechanism in real CPUs
  */
 public class OS {
-    private static Kernel kernel = new Kernel();
+    // Select the process execution backend with -Dos.backend=platform|virtual,
+    // the number of simulated CPUs with -Dos.cpus=N and the memory geometry with
+    // -Dos.pageSize=BYTES, -Dos.memory=BYTES and -Dos.addressSpace=BYTES
+    private static Kernel kernel = new Kernel(
+            ExecutionBackend.forName(System.getProperty("os.backend", "platform")),
+            Integer.getInteger("os.cpus", 1),
+            new MemoryGeometry(
+                    Integer.getInteger("os.pageSize", MemoryGeometry.DEFAULT_PAGE_SIZE),
+                    Long.getLong("os.memory", MemoryGeometry.DEFAULT_PHYSICAL_MEMORY),
+                    Long.getLong("os.addressSpace", MemoryGeometry.DEFAULT_VIRTUAL_MEMORY)));
+    
+    // Select the page replacement policy with -Dos.replacement=clock|second-chance|aging,
+    // the swap device with -Dos.swap=mapped|file (the kernel starts out mapped),
+    // the page-out daemon with -Dos.pageOutLow=FRAMES, -Dos.pageOutHigh=FRAMES and
+    // -Dos.pageOutBatch=PAGES, the largest swap read-ahead with -Dos.readAhead=PAGES,
+    // mailboxes with -Dos.mailboxSize=MESSAGES and -Dos.mailboxFull=block|drop|fail, and
+    // huge pages for large allocations with -Dos.hugePages=true
+    static {
+        kernel.setHugePages(Boolean.getBoolean("os.hugePages"));
+        kernel.setReplacementPolicy(ReplacementPolicy.forName(System.getProperty("os.replacement", "clock")));
+        String swap = System.getProperty("os.swap");
+        if (swap != null) {
+            kernel.setSwapDevice(SwapDevice.forName(swap, Kernel.SWAP_FILE, kernel.getGeometry().getPageSize()));
+        }
+        int low = Integer.getInteger("os.pageOutLow", kernel.getPageOutLowWatermark());
+        int high = Integer.getInteger("os.pageOutHigh", Math.max(low, kernel.getPageOutHighWatermark()));
+        kernel.setPageOutWatermarks(low, high);
+        kernel.setPageOutBatchSize(Integer.getInteger("os.pageOutBatch", kernel.getPageOutBatchSize()));
+        kernel.setReadAheadMax(Integer.getInteger("os.readAhead", kernel.getReadAheadMax()));
+        kernel.setMailboxSize(Integer.getInteger("os.mailboxSize", kernel.getMailboxSize()));
+        kernel.setMailboxPolicy(MailboxPolicy.forName(System.getProperty("os.mailboxFull", "block")));
+    }
     
     /**
      * Allows a userland program to voluntarily give up CPU time
@@ -13,12 +44,21 @@ public class OS {
         kernel.switchTask();
     }
     
+    /**
+     * Kernel entry check for userland code that doesn't otherwise call into the OS
+     * Switches away from the current process if its time slice has expired
+     */
+    public static void checkPreemption() {
+        kernel.checkPreemption();
+    }
+    
     /**
      * Creates a new process with default priority (INTERACTIVE)
      * @param program The program to run
      * @return Process ID of the created process
      */
     public static int createProcess(Runnable program) {
+        kernel.checkPreemption();
         return kernel.createProcess(program);
     }
     
@@ -29,14 +69,60 @@ public class OS {
      * @return Process ID of the created process
      */
     public static int createProcess(Runnable program, Priority priority) {
+        kernel.checkPreemption();
         return kernel.createProcess(program, priority);
     }
     
+    /**
+     * Creates a child of the current process that starts with a copy of its memory
+     * Memory is shared copy-on-write, so forking costs page table entries, not copies
+     * @param program The program the child runs; it sees the parent's memory at the same addresses
+     * @return Process ID of the child, or -1 if out of memory
+     */
+    public static int fork(Runnable program) {
+        kernel.checkPreemption();
+        return kernel.fork(program);
+    }
+    
+    /**
+     * Creates a named shared memory segment and attaches it to the current process
+     * Every process attached to a segment reads and writes the same physical memory
+     * @param name Name other processes attach the segment by
+     * @param size Size in bytes (rounded up to whole pages)
+     * @return Starting virtual address, or -1 if the name is taken or out of memory
+     */
+    public static int shmCreate(String name, int size) {
+        kernel.checkPreemption();
+        return kernel.createSharedMemory(name, size);
+    }
+    
+    /**
+     * Attaches an existing shared memory segment to the current process
+     * @param name The segment's name
+     * @return Starting virtual address, or -1 if there is no such segment
+     */
+    public static int shmAttach(String name) {
+        kernel.checkPreemption();
+        return kernel.attachSharedMemory(name);
+    }
+    
+    /**
+     * Detaches a shared memory segment from the current process
+     * The segment is freed once no process has it attached; exiting detaches everything
+     * @param pointer The address the segment was attached at
+     * @return true if successful, false if no segment is attached there
+     */
+    public static boolean shmDetach(int pointer) {
+        kernel.checkPreemption();
+        return kernel.detachSharedMemory(pointer);
+    }
+    
     /**
      * Gets the current process's PID
      * @return The current PID
      */
     public static int getPid() {
+        kernel.checkPreemption();
         return kernel.getPid();
     }
     
@@ -46,19 +132,52 @@ public class OS {
      * @return The PID, or -1 if not found
      */
     public static int getPidByName(String name) {
+        kernel.checkPreemption();
         return kernel.getPidByName(name);
     }
     
     /**
      * Sends a message to another process
+     * If the target's mailbox is full, the sender blocks, the oldest message is
+     * dropped or the send fails, as set with -Dos.mailboxFull
+     * @param message The message to send; the caller may reuse it straight away
+     * @return true if queued, false if the target doesn't exist or the send failed
+     */
+    public static boolean sendMessage(KernelMessage message) {
+        kernel.checkPreemption();
+        return kernel.sendMessage(message);
+    }
+    
+    /**
+     * Sends a message to another process without creating a message object
+     * The data is copied into a pooled buffer, so the array can be reused straight away
+     * @param targetPid The process ID of the target
+     * @param what An integer indicating the message type
+     * @param data The array holding the data
+     * @param offset Where in it the data starts
+     * @param length Bytes of data
+     * @return true if queued, false if the target doesn't exist or the send failed
+     */
+    public static boolean sendMessage(int targetPid, int what, byte[] data, int offset, int length) {
+        kernel.checkPreemption();
+        return kernel.sendMessage(targetPid, what, data, offset, length);
+    }
+    
+    /**
+     * Sends a message to another process, handing its data over instead of copying it
+     * Pair with KernelMessage.wrap; the message is left empty once sent, but
+     * keeps its data if the send fails, so it can be sent again
      * @param message The message to send
+     * @return true if queued, false if the target doesn't exist or the send failed
      */
-    public static void sendMessage(KernelMessage message) {
-        kernel.sendMessage(message);
+    public static boolean transferMessage(KernelMessage message) {
+        kernel.checkPreemption();
+        return kernel.transferMessage(message);
     }
     
     /**
      * Waits for a message to arrive
+     * Call recycle on the message when done with it to let the kernel reuse it
      * @return The received message, or null if the process is terminated
      */
     public static KernelMessage waitForMessage() {
@@ -86,6 +205,7 @@ public class OS {
      * @return Device ID or -1 if failed
      */
     public static int open(String path) {
+        kernel.checkPreemption();
         return kernel.open(path);
     }
     
@@ -94,6 +214,7 @@ public class OS {
      * @param id Device ID
      */
     public static void close(int id) {
+        kernel.checkPreemption();
         kernel.close(id);
     }
     
@@ -104,6 +225,7 @@ public class OS {
      * @return Data read from the device/file
      */
     public static byte[] read(int id, int size) {
+        kernel.checkPreemption();
         return kernel.read(id, size);
     }
     
@@ -114,6 +236,7 @@ public class OS {
      * @return Number of bytes written
      */
     public static int write(int id, byte[] data) {
+        kernel.checkPreemption();
         return kernel.write(id, data);
     }
     
@@ -123,6 +246,7 @@ public class OS {
      * @param position Position to seek to
      */
     public static void seek(int id, int position) {
+        kernel.checkPreemption();
         kernel.seek(id, position);
     }
     
@@ -132,7 +256,163 @@ public class OS {
      * @return The physical page number, or -1 if not mapped
      */
     public static int getMapping(int virtualPageNumber) {
-        return kernel.getMapping(virtualPageNumber);
+        return kernel.getMapping(virtualPageNumber, false);
+    }
+    
+    /**
+     * Gets the physical page mapping for a virtual page, marking it accessed
+     * (and dirty for a write)
+     * @param virtualPageNumber The virtual page number
+     * @param write true if the page is being written
+     * @return The physical page number, or -1 if not mapped
+     */
+    public static int getMapping(int virtualPageNumber, boolean write) {
+        return kernel.getMapping(virtualPageNumber, write);
+    }
+    
+    /**
+     * Gets the number of TLB hits across all CPUs
+     * @return The hit count
+     */
+    public static long getTLBHits() {
+        return kernel.getTLBHits();
+    }
+    
+    /**
+     * Gets the number of TLB misses across all CPUs
+     * @return The miss count
+     */
+    public static long getTLBMisses() {
+        return kernel.getTLBMisses();
+    }
+    
+    /**
+     * Gets the number of page faults that had to read a page back from swap
+     * @return The major fault count
+     */
+    public static long getMajorFaults() {
+        return kernel.getMajorFaults();
+    }
+    
+    /**
+     * Gets the number of pages written to swap
+     * @return The page-out count
+     */
+    public static long getPageOuts() {
+        return kernel.getPageOuts();
+    }
+    
+    /**
+     * Gets the number of swap file slots holding a page
+     * @return The used slot count
+     */
+    public static int getSwapSlotsInUse() {
+        return kernel.getSwapSlotsInUse();
+    }
+    
+    /**
+     * Gets the size of the swap file
+     * @return The file size in slots (pages)
+     */
+    public static int getSwapFileSlots() {
+        return kernel.getSwapFileSlots();
+    }
+    
+    /**
+     * Gets the number of pages the current process has in memory on its own
+     * Pages it shares, copy-on-write or through shared memory, are not counted
+     * @return The resident page count
+     */
+    public static int getResidentPages() {
+        return kernel.getResidentPages(kernel.getPid());
+    }
+    
+    /**
+     * Flushes the swap file to disk, e.g. at a checkpoint
+     */
+    public static void checkpointSwap() {
+        kernel.checkpointSwap();
+    }
+    
+    /**
+     * Gets the number of queued messages dropped to make room in a full mailbox
+     * @return The dropped message count
+     */
+    public static long getDroppedMessages() {
+        return kernel.getDroppedMessages();
+    }
+    
+    /**
+     * Gets the number of times a sender blocked on a full mailbox
+     * @return The blocked send count
+     */
+    public static long getBlockedSends() {
+        return kernel.getBlockedSends();
+    }
+    
+    /**
+     * Gets the number of pages copied on a write after a fork
+     * @return The copy-on-write copy count
+     */
+    public static long getCopyOnWriteCopies() {
+        return kernel.getCopyOnWriteCopies();
+    }
+    
+    /**
+     * Gets the number of page faults that had to evict a page themselves
+     * because the page-out daemon had not kept a free frame ready
+     * @return The direct reclaim count
+     */
+    public static long getDirectReclaims() {
+        return kernel.getDirectReclaims();
+    }
+    
+    /**
+     * Gets the number of pages the page-out daemon has written to swap
+     * @return The daemon's page-out count
+     */
+    public static long getDaemonPageOuts() {
+        return kernel.getDaemonPageOuts();
+    }
+    
+    /**
+     * Gets the number of pages read ahead of a swap fault
+     * @return The prefetched page count
+     */
+    public static long getPrefetchedPages() {
+        return kernel.getPrefetchedPages();
+    }
+    
+    /**
+     * Gets the share of pages read ahead that were then used
+     * @return Hits per prefetched page, or 0 if nothing has been read ahead
+     */
+    public static double getPrefetchHitRate() {
+        return kernel.getPrefetchHitRate();
+    }
+    
+    /**
+     * Gets the number of free extents (holes) in the current process's address space
+     * @return The free extent count
+     */
+    public static int getFreeExtentCount() {
+        return kernel.getFreeExtentCount(kernel.getPid());
+    }
+    
+    /**
+     * Gets the largest block allocateMemory can currently hand the current process
+     * @return The largest free extent, in pages
+     */
+    public static int getLargestFreeExtent() {
+        return kernel.getLargestFreeExtent(kernel.getPid());
+    }
+    
+    /**
+     * Gets the external fragmentation of the current process's free address space
+     * @return 0 when the free pages form one extent, approaching 1 as they scatter
+     */
+    public static double getFragmentation() {
+        return kernel.getFragmentation(kernel.getPid());
     }
     
     /**
@@ -141,8 +421,10 @@ public class OS {
      * @return Starting virtual address, or -1 if failed
      */
     public static int allocateMemory(int size) {
+        kernel.checkPreemption();
+        
         // Ensure size is a multiple of page size
-        if (size <= 0 || size % Process.PAGE_SIZE != 0) {
+        if (size <= 0 || size % Process.getPageSize() != 0) {
             return -1;
         }
         return kernel.allocateMemory(size);
@@ -155,12 +437,30 @@ public class OS {
      * @return true if successful, false otherwise
      */
     public static boolean freeMemory(int pointer, int size) {
+        kernel.checkPreemption();
+        
         // Ensure pointer and size are valid
         if (pointer < 0 || size <= 0 || 
-            pointer % Process.PAGE_SIZE != 0 || 
-            size % Process.PAGE_SIZE != 0) {
+            pointer % Process.getPageSize() != 0 || 
+            size % Process.getPageSize() != 0) {
             return false;
         }
         return kernel.freeMemory(pointer, size);
     }
+    
+    /**
+     * Gets the number of frames of physical memory
+     * @return The physical page count
+     */
+    public static int getPhysicalPages() {
+        return kernel.getGeometry().getPhysicalPages();
+    }
+    
+    /**
+     * Gets the page size, the granularity of allocateMemory and freeMemory
+     * @return Bytes per page
+     */
+    public static int getPageSize() {
+        return Process.getPageSize();
+    }
 }
\ No newline at end of file
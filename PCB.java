@@ -1,39 +1,101 @@
 package OperationSystem;
 
-import java.time.Clock;
-import java.time.Instant;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Process Control Block - Kernel's representation of a process
  */
 public class PCB {
-    private static int nextPid = 0;
+    public static final int DEFAULT_MAILBOX_SIZE = 256;
+    private static final AtomicInteger nextPid = new AtomicInteger();
     private int pid;
     private Process process;
     private Priority priority;
-    private Instant wakeTime;
+    private long wakeDeadline; // System.nanoTime() to wake at, valid while sleeping
+    private boolean sleeping;
     private int consecutiveTimeouts;
     private String name;
-    private Queue<KernelMessage> messageQueue;
+    private RingBuffer<KernelMessage> mailbox; // Lock-free, senders run on any CPU
+    private AtomicBoolean waitingForMessage;
+    private Queue<PCB> blockedSenders; // Waiting for room in the mailbox
+    private AtomicBoolean waitingForRoom;
+    
+    // Run queue links, owned by RunQueue (level is -1 when not queued)
+    PCB runNext;
+    PCB runPrev;
+    int runQueueLevel;
+    private volatile CPU cpu; // CPU this process last ran or was queued on
+    
+    // Frame list links, owned by FrameTable (first frame is -1 when none are resident)
+    int firstFrame;
+    int residentFrames;
+    
+    // Swap slots held by its pages, pages sharing a frame (copy-on-write or in a
+    // shared memory segment) and segments attached by first page, owned by Kernel
+    int swapSlots;
+    int sharedPages;
+    final Map<Integer, SharedMemorySegment> segments = new HashMap<>(); // Guarded by pageTableLock
     
     // Memory management
-    public static final int MAX_VIRTUAL_PAGES = 100;
-    private VirtualToPhysicalMapping[] pageTable; // Maps virtual page to physical page or disk
+    public static final int HUGE_PAGE_ORDER = 6; // A huge page is 2^6 = 64 small pages
+    public static final int HUGE_PAGE_PAGES = 1 << HUGE_PAGE_ORDER;
+    private PageTable pageTable; // Maps virtual page to physical page or disk
+    private VirtualRangeAllocator addressSpace; // Which virtual pages are handed out
+    private final ReentrantLock pageTableLock = new ReentrantLock(); // Guards pageTable and its entries
+    private final FaultPattern faultPattern = new FaultPattern(); // Guarded by pageTableLock
     
     public PCB(Process process, Priority priority) {
-        this.pid = nextPid++;
+        this(process, priority, new MemoryGeometry().getVirtualPages());
+    }
+    
+    /**
+     * Creates a PCB with an address space of the given size
+     * @param process The process
+     * @param priority Initial scheduling priority
+     * @param virtualPages Number of pages in the process's address space
+     */
+    public PCB(Process process, Priority priority, int virtualPages) {
+        this(process, priority, virtualPages, DEFAULT_MAILBOX_SIZE);
+    }
+    
+    /**
+     * Creates a PCB with an address space and a mailbox of the given sizes
+     * @param process The process
+     * @param priority Initial scheduling priority
+     * @param virtualPages Number of pages in the process's address space
+     * @param mailboxSize Most messages queued for the process at once
+     */
+    public PCB(Process process, Priority priority, int virtualPages, int mailboxSize) {
+        this.pid = nextPid.getAndIncrement();
         this.process = process;
         this.priority = priority;
-        this.wakeTime = null;
+        this.wakeDeadline = 0;
+        this.sleeping = false;
         this.consecutiveTimeouts = 0;
         this.name = process.getProgram().getClass().getSimpleName();
-        this.messageQueue = new LinkedList<>();
+        this.mailbox = new RingBuffer<>(mailboxSize);
+        this.waitingForMessage = new AtomicBoolean(false);
+        this.blockedSenders = new ConcurrentLinkedQueue<>();
+        this.waitingForRoom = new AtomicBoolean(false);
+        this.runNext = null;
+        this.runPrev = null;
+        this.runQueueLevel = -1;
+        this.cpu = null;
+        this.firstFrame = -1;
+        this.residentFrames = 0;
+        this.swapSlots = 0;
+        this.sharedPages = 0;
+        process.setPcb(this);
         
-        // Initialize page table with no mappings
-        this.pageTable = new VirtualToPhysicalMapping[MAX_VIRTUAL_PAGES];
-        // Note: We're leaving entries as null to indicate unmapped pages
+        // Initialize page table with no mappings; it only grows as far as pages get mapped
+        this.pageTable = new PageTable(virtualPages);
+        this.addressSpace = new VirtualRangeAllocator(virtualPages);
     }
     
     public int getPid() {
@@ -48,6 +110,14 @@ public class PCB {
         return priority;
     }
     
+    public CPU getCpu() {
+        return cpu;
+    }
+    
+    public void setCpu(CPU cpu) {
+        this.cpu = cpu;
+    }
+    
     public void incrementTimeouts() {
         consecutiveTimeouts++;
         if (consecutiveTimeouts > 5) {
@@ -56,6 +126,10 @@ public class PCB {
         }
     }
     
+    public void resetTimeouts() {
+        consecutiveTimeouts = 0;
+    }
+    
     private void downgrade() {
         if (priority == Priority.REALTIME) {
             priority = Priority.INTERACTIVE;
@@ -65,53 +139,67 @@ public class PCB {
     }
     
     public void sleep(int milliseconds) {
-        wakeTime = Clock.systemUTC().instant().plusMillis(milliseconds);
+        wakeDeadline = System.nanoTime() + milliseconds * 1_000_000L;
+        sleeping = true;
+    }
+    
+    public long getWakeDeadline() {
+        return wakeDeadline;
     }
     
     public boolean shouldWake() {
-        return wakeTime != null && !Clock.systemUTC().instant().isBefore(wakeTime);
+        return shouldWake(System.nanoTime());
+    }
+    
+    public boolean shouldWake(long now) {
+        return sleeping && now - wakeDeadline >= 0;
     }
     
     public void clearWakeTime() {
-        wakeTime = null;
+        sleeping = false;
     }
     
     public void run() {
         process.start();
     }
     
+    /**
+     * Parks the calling thread until the kernel dispatches this process again
+     */
     public void stop() {
-        // In a real implementation, we would stop the process here
-        // For this simulation, we're relying on Java's thread management
-        try {
-            while (!process.isStarted()) {
-                Thread.sleep(10);
-            }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        process.park();
     }
     
     public boolean isDone() {
-        // In a real implementation, we would check if the process is done
-        // For this simulation, we're simplifying
-        return false;
+        return process.isFinished();
     }
     
+    /**
+     * Hands this process the CPU token
+     */
     public void resume() {
         process.resume();
     }
     
+    /**
+     * Checks if the calling thread belongs to this process
+     * @return true if called from this process's own thread
+     */
+    public boolean isCurrentThread() {
+        return process.isCurrentThread();
+    }
+    
     public boolean isStarted() {
         return process.isStarted();
     }
     
     /**
-     * Adds a message to this process's message queue
+     * Adds a message to this process's mailbox
      * @param message The message to add
+     * @return true if added, false if the mailbox is full
      */
-    public void addMessage(KernelMessage message) {
-        messageQueue.add(message);
+    public boolean addMessage(KernelMessage message) {
+        return mailbox.offer(message);
     }
     
     /**
@@ -119,96 +207,146 @@ public class PCB {
      * @return true if there are messages, false otherwise
      */
     public boolean hasMessages() {
-        return !messageQueue.isEmpty();
+        return !mailbox.isEmpty();
+    }
+    
+    /**
+     * Checks if this process's mailbox can take another message
+     * @return true if there is room, false if it is full
+     */
+    public boolean hasMailboxRoom() {
+        return !mailbox.isFull();
     }
     
     /**
-     * Gets the next message from the queue
+     * Gets the next message from the mailbox
      * @return The next message, or null if there are none
      */
     public KernelMessage getNextMessage() {
-        return messageQueue.poll();
+        return mailbox.poll();
     }
     
     /**
-     * Gets the physical page for a virtual page
-     * @param virtualPage The virtual page number
-     * @return The physical page number, or -1 if not mapped or not in memory
+     * Registers a process waiting for room in this process's mailbox
+     * @param sender The waiting process
      */
-    public int getPhysicalPage(int virtualPage) {
-        if (virtualPage >= 0 && virtualPage < MAX_VIRTUAL_PAGES && pageTable[virtualPage] != null) {
-            return pageTable[virtualPage].physicalPageNumber;
-        }
-        return -1;
+    public void addBlockedSender(PCB sender) {
+        blockedSenders.add(sender);
+    }
+    
+    /**
+     * Unregisters a process that stopped waiting for room in this process's mailbox
+     * @param sender The process
+     */
+    public void removeBlockedSender(PCB sender) {
+        blockedSenders.remove(sender);
+    }
+    
+    /**
+     * Takes the longest registered process waiting for room in this process's mailbox
+     * @return The process, or null if there is none
+     */
+    public PCB pollBlockedSender() {
+        return blockedSenders.poll();
+    }
+    
+    /**
+     * Marks this process as blocked until a full mailbox it sends to has room
+     */
+    public void setWaitingForRoom() {
+        waitingForRoom.set(true);
+    }
+    
+    /**
+     * Atomically takes the waiting-for-room flag
+     * @return true if the process was waiting and the caller is now responsible for waking it
+     */
+    public boolean clearWaitingForRoom() {
+        return waitingForRoom.compareAndSet(true, false);
+    }
+    
+    /**
+     * Marks this process as blocked until a message arrives
+     */
+    public void setWaitingForMessage() {
+        waitingForMessage.set(true);
+    }
+    
+    /**
+     * Atomically takes the waiting flag
+     * @return true if the process was waiting and the caller is now responsible for waking it
+     */
+    public boolean clearWaitingForMessage() {
+        return waitingForMessage.compareAndSet(true, false);
     }
     
     /**
-     * Gets the disk page for a virtual page
+     * Gets the lock that guards this process's page table
+     * @return The page table lock
+     */
+    public ReentrantLock getPageTableLock() {
+        return pageTableLock;
+    }
+
+    /**
+     * Gets the detector that sizes read-ahead for this process's page faults
+     * Must be used with the page table lock held
+     * @return The fault pattern
+     */
+    public FaultPattern getFaultPattern() {
+        return faultPattern;
+    }
+
+    /**
+     * Gets the page table entry for a virtual page
      * @param virtualPage The virtual page number
-     * @return The disk page number, or -1 if not mapped or not on disk
+     * @return The PTE (see PageTable), or 0 if not mapped or inside a huge page
      */
-    public int getDiskPage(int virtualPage) {
-        if (virtualPage >= 0 && virtualPage < MAX_VIRTUAL_PAGES && pageTable[virtualPage] != null) {
-            return pageTable[virtualPage].diskPageNumber;
-        }
-        return -1;
+    public long getPte(int virtualPage) {
+        return pageTable.get(virtualPage);
     }
     
     /**
-     * Maps a virtual page to a physical page
+     * Replaces the page table entry for a virtual page
      * @param virtualPage The virtual page number
-     * @param physicalPage The physical page number
+     * @param pte The new PTE, or 0 to unmap the page
      * @return true if successful, false otherwise
      */
-    public boolean mapPage(int virtualPage, int physicalPage) {
-        if (virtualPage >= 0 && virtualPage < MAX_VIRTUAL_PAGES) {
-            if (pageTable[virtualPage] == null) {
-                pageTable[virtualPage] = new VirtualToPhysicalMapping();
-            }
-            pageTable[virtualPage].physicalPageNumber = physicalPage;
-            return true;
+    public boolean setPte(int virtualPage, long pte) {
+        return pageTable.set(virtualPage, pte);
+    }
+    
+    /**
+     * Gets the physical page for a virtual page
+     * @param virtualPage The virtual page number
+     * @return The physical page number, or -1 if not mapped or not in memory
+     */
+    public int getPhysicalPage(int virtualPage) {
+        int hugeBase = getHugePage(virtualPage);
+        if (hugeBase != -1) {
+            return hugeBase + (virtualPage & (HUGE_PAGE_PAGES - 1));
         }
-        return false;
+        return PageTable.frameOf(pageTable.get(virtualPage));
     }
     
     /**
-     * Maps a virtual page to a disk page
+     * Maps a virtual page to a physical page
      * @param virtualPage The virtual page number
-     * @param diskPage The disk page number
+     * @param physicalPage The physical page number, or -1 to allocate it lazily on first access
      * @return true if successful, false otherwise
      */
-    public boolean mapToDisk(int virtualPage, int diskPage) {
-        if (virtualPage >= 0 && virtualPage < MAX_VIRTUAL_PAGES) {
-            if (pageTable[virtualPage] == null) {
-                pageTable[virtualPage] = new VirtualToPhysicalMapping();
-            }
-            pageTable[virtualPage].diskPageNumber = diskPage;
-            return true;
-        }
-        return false;
+    public boolean mapPage(int virtualPage, int physicalPage) {
+        long pte = pageTable.get(virtualPage);
+        return pageTable.set(virtualPage, PageTable.withFrame(pte | PageTable.VALID, physicalPage));
     }
     
     /**
-     * Gets all allocated physical pages
-     * @return Array of physical pages that are mapped
+     * Finds the next mapped virtual page, small or inside a huge page
+     * @param fromPage Virtual page to start looking at
+     * @return The virtual page number, or -1 if nothing is mapped at or after fromPage
      */
-    public int[] getAllocatedPhysicalPages() {
-        int count = 0;
-        for (int i = 0; i < MAX_VIRTUAL_PAGES; i++) {
-            if (pageTable[i] != null && pageTable[i].physicalPageNumber != -1) {
-                count++;
-            }
-        }
-        
-        int[] pages = new int[count];
-        int index = 0;
-        for (int i = 0; i < MAX_VIRTUAL_PAGES; i++) {
-            if (pageTable[i] != null && pageTable[i].physicalPageNumber != -1) {
-                pages[index++] = pageTable[i].physicalPageNumber;
-            }
-        }
-        
-        return pages;
+    public int nextMappedPage(int fromPage) {
+        return pageTable.nextMapped(fromPage);
     }
     
     /**
@@ -216,52 +354,104 @@ public class PCB {
      * @param virtualPage The virtual page to unmap
      */
     public void unmapPage(int virtualPage) {
-        if (virtualPage >= 0 && virtualPage < MAX_VIRTUAL_PAGES) {
-            pageTable[virtualPage] = null;
-        }
+        pageTable.set(virtualPage, 0);
     }
     
     /**
-     * Finds a contiguous block of unmapped virtual pages
+     * Reserves a contiguous block of virtual pages
      * @param numPages Number of pages needed
+     * @param alignment Required alignment of the first page, in pages
      * @return Starting virtual page number, or -1 if not available
      */
-    public int findFreeVirtualPages(int numPages) {
-        if (numPages <= 0) {
-            return -1;
+    public int allocateVirtualPages(int numPages, int alignment) {
+        return addressSpace.allocate(numPages, alignment);
+    }
+    
+    /**
+     * Returns a block of virtual pages to the free address space
+     * @param startPage First virtual page of the block
+     * @param numPages Number of pages
+     * @return true if successful, false if the block was not (entirely) reserved
+     */
+    public boolean freeVirtualPages(int startPage, int numPages) {
+        return addressSpace.free(startPage, numPages);
+    }
+    
+    /**
+     * Hands out the same virtual pages as another process (for fork)
+     * @param parent The process whose address space layout to copy
+     */
+    public void copyAddressSpace(PCB parent) {
+        addressSpace = new VirtualRangeAllocator(parent.addressSpace);
+    }
+    
+    /**
+     * Gets the allocator of this process's virtual pages (for the kernel's fragmentation statistics)
+     * @return The virtual range allocator
+     */
+    public VirtualRangeAllocator getAddressSpace() {
+        return addressSpace;
+    }
+    
+    /**
+     * Gets the huge page covering a virtual page
+     * @param virtualPage The virtual page number
+     * @return The first physical page of the huge page, or -1 if the page is not in one
+     */
+    public int getHugePage(int virtualPage) {
+        return PageTable.frameOf(pageTable.getHuge(virtualPage));
+    }
+    
+    /**
+     * Maps a whole huge page region to physically contiguous pages
+     * @param virtualPage First virtual page of the region (must be huge page aligned)
+     * @param physicalPage First physical page of the block (must be huge page aligned)
+     * @return true if successful, false if misaligned, out of range or partly mapped
+     */
+    public boolean mapHugePage(int virtualPage, int physicalPage) {
+        if (virtualPage % HUGE_PAGE_PAGES != 0 || physicalPage % HUGE_PAGE_PAGES != 0
+                || pageTable.getHuge(virtualPage) != 0) {
+            return false;
         }
-        
-        int consecutiveFree = 0;
-        int startPage = -1;
-        
-        for (int i = 0; i < MAX_VIRTUAL_PAGES; i++) {
-            if (pageTable[i] == null) {
-                if (consecutiveFree == 0) {
-                    startPage = i;
-                }
-                consecutiveFree++;
-                
-                if (consecutiveFree >= numPages) {
-                    return startPage;
-                }
-            } else {
-                consecutiveFree = 0;
-                startPage = -1;
-            }
+        return pageTable.setHuge(virtualPage, PageTable.makePte(physicalPage, -1));
+    }
+    
+    /**
+     * Removes the huge page covering a virtual page
+     * @param virtualPage Any virtual page inside the huge page
+     * @return The first physical page it was mapped to, or -1 if there was none
+     */
+    public int unmapHugePage(int virtualPage) {
+        int base = getHugePage(virtualPage);
+        if (base != -1) {
+            pageTable.setHuge(virtualPage, 0);
         }
-        
-        return -1; // Not enough contiguous virtual pages
+        return base;
     }
     
     /**
-     * Gets the mapping for a virtual page
-     * @param virtualPage The virtual page number
-     * @return The mapping, or null if not mapped
+     * Splits the huge page covering a virtual page into ordinary page mappings
+     * The frames stay where they are; they just become individually freeable and swappable
+     * @param virtualPage Any virtual page inside the huge page
+     * @return true if a huge page was split
      */
-    public VirtualToPhysicalMapping getMapping(int virtualPage) {
-        if (virtualPage >= 0 && virtualPage < MAX_VIRTUAL_PAGES) {
-            return pageTable[virtualPage];
+    public boolean demoteHugePage(int virtualPage) {
+        int base = unmapHugePage(virtualPage);
+        if (base == -1) {
+            return false;
         }
-        return null;
+        int start = virtualPage & ~(HUGE_PAGE_PAGES - 1);
+        for (int i = 0; i < HUGE_PAGE_PAGES; i++) {
+            mapPage(start + i, base + i);
+        }
+        return true;
+    }
+    
+    /**
+     * Gets the size of the address space
+     * @return Number of virtual pages
+     */
+    public int getVirtualPages() {
+        return pageTable.getVirtualPages();
     }
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package OperationSystem;
+
+/**
+ * PageOutDaemon - Kernel process that keeps a reserve of free frames
+ * It stays parked until free frames fall below the kernel's low watermark,
+ * then evicts pages in batches towards the high watermark, so a fault
+ * normally finds a free frame without writing anything itself.
+ *
+ * It runs at BACKGROUND and is never queued. Instead a process faulting
+ * below the low watermark lends it its own CPU for a batch, so busy
+ * processes can't starve it.
+ */
+public class PageOutDaemon implements Runnable {
+    private final Kernel kernel;
+
+    /**
+     * Creates the daemon for a kernel
+     * @param kernel The kernel whose memory it reclaims
+     */
+    public PageOutDaemon(Kernel kernel) {
+        this.kernel = kernel;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            kernel.pageOut();
+            kernel.awaitPageOutWork();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package OperationSystem;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PageOutTest - Has several processes write twice as many pages as there are
+ * frames, and checks that the page-out daemon, not the faulting processes,
+ * writes most of the evicted pages to swap, even though the workers never
+ * give up the CPU by themselves. Pages are written in a random order so
+ * that read-ahead stays out of it. Run it with -Dos.cpus=N as well
+ */
+public class PageOutTest implements Runnable {
+    private static final int PASSES = 3;
+    private static final int MIN_DAEMON_PERCENT = 75; // Share of page-outs the daemon must do
+    private static final int WAIT_MILLIS = 1;
+
+    private static final AtomicInteger touched = new AtomicInteger(); // Workers that have all their pages
+
+    @Override
+    public void run() {
+        System.out.println("PageOutTest: Starting page-out daemon test...");
+        int pageSize = OS.getPageSize();
+
+        // Find the most pages a process can allocate, then start enough processes to overcommit memory
+        int maxPages = Integer.MAX_VALUE / pageSize;
+        int pages = 0;
+        for (int step = Integer.highestOneBit(maxPages); step > 0; step >>= 1) {
+            if (pages + step <= maxPages) {
+                int address = OS.allocateMemory((pages + step) * pageSize);
+                if (address != -1) {
+                    OS.freeMemory(address, (pages + step) * pageSize);
+                    pages += step;
+                }
+            }
+        }
+        if (pages == 0) {
+            System.out.println("PageOutTest: ERROR - Could not allocate a single page");
+            return;
+        }
+        int workers = (2 * OS.getPhysicalPages() + pages - 1) / pages;
+
+        long daemonBefore = OS.getDaemonPageOuts();
+        long directBefore = OS.getDirectReclaims();
+        int parentPid = OS.getPid();
+        for (int i = 0; i < workers; i++) {
+            OS.createProcess(new Worker(parentPid, pages, workers, i));
+        }
+        int errors = 0;
+        for (int i = 0; i < workers; i++) {
+            KernelMessage report = OS.waitForMessage();
+            if (report == null) {
+                i--;
+                continue;
+            }
+            errors += report.getWhat();
+            report.recycle();
+        }
+
+        long daemon = OS.getDaemonPageOuts() - daemonBefore;
+        long direct = OS.getDirectReclaims() - directBefore;
+        System.out.println("PageOutTest: " + workers + " processes of " + pages + " pages: daemon wrote "
+                + daemon + " pages, faults reclaimed " + direct + " frames themselves");
+        if (errors > 0) {
+            System.out.println("PageOutTest: ERROR - " + errors + " pages read back wrong");
+        }
+        if (daemon * 100 < (daemon + direct) * MIN_DAEMON_PERCENT) {
+            System.out.println("PageOutTest: ERROR - The daemon did less than " + MIN_DAEMON_PERCENT
+                    + "% of the page-outs");
+        }
+        System.out.println("PageOutTest: Page-out daemon test complete");
+    }
+
+    /**
+     * Touches all its pages and waits for the other workers to do the same, then
+     * writes its pages in a random order and reads them all back. Reports the
+     * number of wrong pages to the parent as the message type
+     */
+    private static class Worker implements Runnable {
+        private final int parentPid;
+        private final int pages;
+        private final int workers;
+        private final int seed;
+
+        Worker(int parentPid, int pages, int workers, int seed) {
+            this.parentPid = parentPid;
+            this.pages = pages;
+            this.workers = workers;
+            this.seed = seed;
+        }
+
+        @Override
+        public void run() {
+            Process process = new Process(this);
+            int pageSize = OS.getPageSize();
+            int errors = 0;
+            try {
+                int address = OS.allocateMemory(pages * pageSize);
+                if (address == -1) {
+                    errors = pages;
+                } else {
+                    int[] values = new int[pages];
+                    for (int page = 0; page < pages; page++) {
+                        process.writeInt(address + page * pageSize, 0);
+                    }
+                    touched.incrementAndGet();
+                    while (touched.get() < workers) {
+                        OS.sleep(WAIT_MILLIS);
+                    }
+
+                    Random random = new Random(seed);
+                    for (int i = 0; i < PASSES * pages; i++) {
+                        int page = random.nextInt(pages);
+                        values[page] = i + 1;
+                        process.writeInt(address + page * pageSize, i + 1);
+                    }
+                    for (int page = 0; page < pages; page++) {
+                        if (process.readInt(address + page * pageSize) != values[page]) {
+                            errors++;
+                        }
+                    }
+                    OS.freeMemory(address, pages * pageSize);
+                }
+            } catch (MemoryAccessException e) {
+                System.out.println("PageOutTest: ERROR - " + e.getMessage());
+                errors = pages;
+            }
+            OS.sendMessage(parentPid, errors, new byte[1], 0, 1);
+        }
+    }
+}
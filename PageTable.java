@@ -0,0 +1,319 @@
+package OperationSystem;
+
+/**
+ * PageTable - Sparse three-level radix page table of one process
+ * A virtual page number is split into root, directory and leaf indices.
+ * Directories and leaves are allocated on first use and dropped when they
+ * empty again, so memory and walk time follow the pages actually mapped,
+ * not the size of the address space. A leaf covers exactly one huge page,
+ * so a huge page is a single directory entry with no leaf below it.
+ *
+ * Entries are packed into longs (PTEs) rather than objects:
+ *   bits  0-27  physical frame, valid when PRESENT is set
+ *   bits 28-54  swap slot, valid when ON_DISK is set
+ *   bit  55     SHARED    - frame of a shared memory segment, written in place by all its processes
+ *   bit  56     VALID     - the page is allocated (0 means unmapped)
+ *   bit  57     PRESENT   - the page is in physical memory
+ *   bit  58     ON_DISK   - the page has a copy in the swap file
+ *   bit  59     ACCESSED  - referenced since the bit was last cleared
+ *   bit  60     DIRTY     - written since it was last loaded or saved
+ *   bit  61     HUGE      - directory entry mapping a whole huge page
+ *   bit  62     PREFETCHED - read ahead of a fault and not used since
+ *   bit  63     COPY_ON_WRITE - frame shared with other processes, copied on the first write
+ */
+public class PageTable {
+    public static final long SHARED = 1L << 55;
+    public static final long VALID = 1L << 56;
+    public static final long PRESENT = 1L << 57;
+    public static final long ON_DISK = 1L << 58;
+    public static final long ACCESSED = 1L << 59;
+    public static final long DIRTY = 1L << 60;
+    public static final long HUGE = 1L << 61;
+    public static final long PREFETCHED = 1L << 62;
+    public static final long COPY_ON_WRITE = 1L << 63;
+
+    public static final int MAX_FRAMES = 1 << 28;
+    public static final int MAX_SWAP_SLOTS = 1 << 27;
+
+    private static final int FRAME_SHIFT = 0;
+    private static final int SLOT_SHIFT = 28;
+    private static final long FIELD_MASK = (1L << 28) - 1;
+    private static final long SLOT_MASK = (1L << 27) - 1;
+
+    private static final int LEAF_BITS = PCB.HUGE_PAGE_ORDER;
+    private static final int LEAF_SIZE = 1 << LEAF_BITS;
+    private static final int DIR_BITS = 9;
+    private static final int DIR_SIZE = 1 << DIR_BITS;
+    private static final int DIR_SPAN = LEAF_SIZE * DIR_SIZE; // Virtual pages under one directory
+
+    /**
+     * Middle level: leaf tables, or huge page entries in place of a leaf
+     */
+    private static final class Directory {
+        final long[][] leaves = new long[DIR_SIZE][];
+        final long[] hugeEntries = new long[DIR_SIZE];
+        int used; // Non-null leaves plus huge entries
+    }
+
+    private final int virtualPages;
+    private final Directory[] root;
+    private int mappedPages; // Pages with a small PTE
+
+    /**
+     * Creates an empty page table
+     * @param virtualPages Size of the address space in pages
+     */
+    public PageTable(int virtualPages) {
+        this.virtualPages = virtualPages;
+        this.root = new Directory[(int) (((long) virtualPages + DIR_SPAN - 1) / DIR_SPAN)];
+    }
+
+    /**
+     * Gets the PTE of a page
+     * @param virtualPage The virtual page number
+     * @return The PTE, or 0 if the page is unmapped or out of range
+     */
+    public long get(int virtualPage) {
+        long[] leaf = leafOf(virtualPage);
+        return leaf != null ? leaf[virtualPage & (LEAF_SIZE - 1)] : 0;
+    }
+
+    /**
+     * Sets the PTE of a page, allocating table levels as needed
+     * Setting 0 unmaps the page and frees table levels that become empty
+     * @param virtualPage The virtual page number (must not be inside a huge page)
+     * @param pte The new PTE
+     * @return true if successful, false if out of range
+     */
+    public boolean set(int virtualPage, long pte) {
+        if (virtualPage < 0 || virtualPage >= virtualPages) {
+            return false;
+        }
+        int rootIndex = virtualPage / DIR_SPAN;
+        int dirIndex = (virtualPage >>> LEAF_BITS) & (DIR_SIZE - 1);
+        int leafIndex = virtualPage & (LEAF_SIZE - 1);
+
+        Directory dir = root[rootIndex];
+        if (dir == null) {
+            if (pte == 0) {
+                return true;
+            }
+            dir = new Directory();
+            root[rootIndex] = dir;
+        }
+        if (dir.hugeEntries[dirIndex] != 0) {
+            return pte == 0;
+        }
+        long[] leaf = dir.leaves[dirIndex];
+        if (leaf == null) {
+            if (pte == 0) {
+                return true;
+            }
+            leaf = new long[LEAF_SIZE];
+            dir.leaves[dirIndex] = leaf;
+            dir.used++;
+        }
+
+        if (leaf[leafIndex] == 0 && pte != 0) {
+            mappedPages++;
+        } else if (leaf[leafIndex] != 0 && pte == 0) {
+            mappedPages--;
+        }
+        leaf[leafIndex] = pte;
+
+        if (pte == 0 && isEmpty(leaf)) {
+            dir.leaves[dirIndex] = null;
+            release(dir, rootIndex);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the huge page entry covering a page
+     * @param virtualPage Any virtual page inside the huge page
+     * @return The huge PTE, or 0 if the page is not in a huge page
+     */
+    public long getHuge(int virtualPage) {
+        if (virtualPage < 0 || virtualPage >= virtualPages) {
+            return 0;
+        }
+        Directory dir = root[virtualPage / DIR_SPAN];
+        return dir != null ? dir.hugeEntries[(virtualPage >>> LEAF_BITS) & (DIR_SIZE - 1)] : 0;
+    }
+
+    /**
+     * Sets or clears the huge page entry covering a page
+     * @param virtualPage Any virtual page inside the huge page region
+     * @param pte The huge PTE, or 0 to clear it
+     * @return true if successful, false if out of range or small pages are mapped there
+     */
+    public boolean setHuge(int virtualPage, long pte) {
+        int regionStart = virtualPage & ~(LEAF_SIZE - 1);
+        if (virtualPage < 0 || regionStart > virtualPages - LEAF_SIZE) {
+            return false;
+        }
+        int rootIndex = virtualPage / DIR_SPAN;
+        int dirIndex = (virtualPage >>> LEAF_BITS) & (DIR_SIZE - 1);
+
+        Directory dir = root[rootIndex];
+        if (dir == null) {
+            if (pte == 0) {
+                return true;
+            }
+            dir = new Directory();
+            root[rootIndex] = dir;
+        }
+        if (dir.leaves[dirIndex] != null) {
+            return false;
+        }
+
+        long old = dir.hugeEntries[dirIndex];
+        dir.hugeEntries[dirIndex] = pte == 0 ? 0 : pte | HUGE;
+        if (old == 0 && pte != 0) {
+            dir.used++;
+        } else if (old != 0 && pte == 0) {
+            release(dir, rootIndex);
+        }
+        return true;
+    }
+
+    /**
+     * Finds the next page that is mapped, as a small page or inside a huge page
+     * Skips empty directories and leaves, so the cost follows the mapped pages
+     * @param fromPage The first virtual page to consider
+     * @return The lowest mapped virtual page at or after fromPage, or -1 if there is none
+     */
+    public int nextMapped(int fromPage) {
+        if (fromPage < 0) {
+            fromPage = 0;
+        }
+        for (int rootIndex = fromPage / DIR_SPAN; rootIndex < root.length; rootIndex++) {
+            Directory dir = root[rootIndex];
+            int base = rootIndex * DIR_SPAN;
+            if (dir == null) {
+                continue;
+            }
+            int first = Math.max(fromPage, base) - base;
+            for (int dirIndex = first >>> LEAF_BITS; dirIndex < DIR_SIZE; dirIndex++) {
+                int leafBase = base + (dirIndex << LEAF_BITS);
+                int start = Math.max(fromPage, leafBase);
+                if (dir.hugeEntries[dirIndex] != 0) {
+                    return start;
+                }
+                long[] leaf = dir.leaves[dirIndex];
+                if (leaf == null) {
+                    continue;
+                }
+                for (int i = start - leafBase; i < LEAF_SIZE; i++) {
+                    if (leaf[i] != 0) {
+                        return leafBase + i;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the number of pages mapped with small PTEs
+     * @return The mapped page count
+     */
+    public int getMappedPageCount() {
+        return mappedPages;
+    }
+
+    /**
+     * Gets the size of the address space
+     * @return Number of virtual pages
+     */
+    public int getVirtualPages() {
+        return virtualPages;
+    }
+
+    /**
+     * Builds a PTE for an allocated page
+     * @param physicalPage Physical frame, or -1 if not in memory
+     * @param diskSlot Swap slot, or -1 if not on disk
+     * @return The PTE
+     */
+    public static long makePte(int physicalPage, int diskSlot) {
+        return withDiskSlot(withFrame(VALID, physicalPage), diskSlot);
+    }
+
+    /**
+     * Gets the physical frame of a PTE
+     * @param pte The PTE
+     * @return The frame, or -1 if the page is not in memory
+     */
+    public static int frameOf(long pte) {
+        return (pte & PRESENT) != 0 ? (int) ((pte >>> FRAME_SHIFT) & FIELD_MASK) : -1;
+    }
+
+    /**
+     * Gets the swap slot of a PTE
+     * @param pte The PTE
+     * @return The slot, or -1 if the page has no copy on disk
+     */
+    public static int diskSlotOf(long pte) {
+        return (pte & ON_DISK) != 0 ? (int) ((pte >>> SLOT_SHIFT) & SLOT_MASK) : -1;
+    }
+
+    /**
+     * Replaces the physical frame of a PTE
+     * @param pte The PTE
+     * @param physicalPage The new frame, or -1 to mark the page not present
+     * @return The updated PTE
+     */
+    public static long withFrame(long pte, int physicalPage) {
+        pte &= ~(PRESENT | (FIELD_MASK << FRAME_SHIFT));
+        if (physicalPage == -1) {
+            return pte;
+        }
+        if (physicalPage < 0 || physicalPage >= MAX_FRAMES) {
+            throw new IllegalArgumentException("Physical page out of PTE range: " + physicalPage);
+        }
+        return pte | PRESENT | ((long) physicalPage << FRAME_SHIFT);
+    }
+
+    /**
+     * Replaces the swap slot of a PTE
+     * @param pte The PTE
+     * @param diskSlot The new slot, or -1 to mark the page as having no disk copy
+     * @return The updated PTE
+     */
+    public static long withDiskSlot(long pte, int diskSlot) {
+        pte &= ~(ON_DISK | (SLOT_MASK << SLOT_SHIFT));
+        if (diskSlot == -1) {
+            return pte;
+        }
+        if (diskSlot < 0 || diskSlot >= MAX_SWAP_SLOTS) {
+            throw new IllegalArgumentException("Swap slot out of PTE range: " + diskSlot);
+        }
+        return pte | ON_DISK | ((long) diskSlot << SLOT_SHIFT);
+    }
+
+    private long[] leafOf(int virtualPage) {
+        if (virtualPage < 0 || virtualPage >= virtualPages) {
+            return null;
+        }
+        Directory dir = root[virtualPage / DIR_SPAN];
+        return dir != null ? dir.leaves[(virtualPage >>> LEAF_BITS) & (DIR_SIZE - 1)] : null;
+    }
+
+    // Drops one use of a directory, freeing it when nothing is left under it
+    private void release(Directory dir, int rootIndex) {
+        dir.used--;
+        if (dir.used == 0) {
+            root[rootIndex] = null;
+        }
+    }
+
+    private static boolean isEmpty(long[] leaf) {
+        for (long pte : leaf) {
+            if (pte != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
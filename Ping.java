@@ -28,14 +28,14 @@ public class Ping implements Runnable {
         while (count < MAX_EXCHANGES) {
             // Send PING message
             String message = "PING " + count;
-            KernelMessage km = new KernelMessage(pongPid, MSG_PING, message.getBytes());
-            OS.sendMessage(km);
+            KernelMessage km = KernelMessage.wrap(pongPid, MSG_PING, message.getBytes());
+            OS.transferMessage(km);
             System.out.println("Ping: Sent " + message + " to Pong");
             
             // Wait for PONG response
             KernelMessage response = OS.waitForMessage();
             if (response != null && response.getWhat() == MSG_PONG) {
-                String responseText = new String(response.getData());
+                String responseText = new String(response.takeData());
                 System.out.println("Ping: Received " + responseText + " from Pong");
                 count++;
             }
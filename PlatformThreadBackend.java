@@ -0,0 +1,26 @@
+package OperationSystem;
+
+/**
+ * PlatformThreadBackend - Runs every process on its own OS thread
+ */
+public class PlatformThreadBackend implements ExecutionBackend {
+    private long stackSize; // 0 means the JVM default
+
+    public PlatformThreadBackend() {
+        this(0);
+    }
+
+    /**
+     * Creates a backend with a custom thread stack size
+     * Smaller stacks let more processes fit in one JVM
+     * @param stackSize Requested stack size in bytes, or 0 for the default
+     */
+    public PlatformThreadBackend(long stackSize) {
+        this.stackSize = stackSize;
+    }
+
+    @Override
+    public Thread newThread(Runnable body, String name) {
+        return new Thread(null, body, name, stackSize);
+    }
+}
@@ -17,14 +17,14 @@ public class Pong implements Runnable {
             
             // If we got a message and it's a PING
             if (message != null && message.getWhat() == MSG_PING) {
-                String pingText = new String(message.getData());
+                String pingText = new String(message.takeData());
                 System.out.println("Pong: Received " + pingText + " from Ping");
                 
                 // Send PONG response
                 String response = "PONG " + pingText.split(" ")[1];
-                KernelMessage responseMsg = new KernelMessage(
+                KernelMessage responseMsg = KernelMessage.wrap(
                     message.getSenderPid(), MSG_PONG, response.getBytes());
-                OS.sendMessage(responseMsg);
+                OS.transferMessage(responseMsg);
                 System.out.println("Pong: Sent " + response + " to Ping");
             }
             
@@ -1,4 +1,13 @@
 package OperationSystem;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+
 /**
  * Process class - Represents a running program
  */
@@ -6,30 +15,57 @@ public class Process {
     private Runnable program;
     private Thread thread;
     private boolean started;
+    private boolean daemon; // Kernel service that must not keep the JVM alive
+    private volatile boolean finished;
+    private Semaphore cpu; // CPU token, released by the kernel when this process is dispatched
+    private ExecutionBackend backend;
+    private PCB pcb; // Kernel bookkeeping for this process, set by the PCB
     
-    // Memory management
-    public static final int PAGE_SIZE = 1024; // 1KB pages
-    private static final int MEMORY_SIZE = 1024 * 1024; // 1MB total memory
-    private static byte[] memory = new byte[MEMORY_SIZE];
+    // Memory management, laid out by the kernel's geometry
+    private static int pageSize = MemoryGeometry.DEFAULT_PAGE_SIZE;
+    private static int pageShift = Integer.numberOfTrailingZeros(pageSize);
+    private static byte[] memory = new byte[(int) MemoryGeometry.DEFAULT_PHYSICAL_MEMORY];
     
-    // Translation Lookaside Buffer (TLB)
-    private static final int TLB_SIZE = 2;
-    private static int[][] tlb = new int[TLB_SIZE][2]; // [entry][0=virtual, 1=physical]
+    // Multi-byte views over physical memory, used when a value sits within one page
+    private static final VarHandle SHORT_LE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle SHORT_BE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
     
-    static {
-        // Initialize TLB with invalid entries
-        clearTLB();
-    }
+    // The process whose thread is running the calling code
+    private static final ThreadLocal<Process> CURRENT = new ThreadLocal<>();
     
     public Process(Runnable program) {
+        this(program, new PlatformThreadBackend());
+    }
+    
+    /**
+     * Creates a process that runs on the given execution backend
+     * @param program The program to run
+     * @param backend Creates the thread the program runs on
+     */
+    public Process(Runnable program, ExecutionBackend backend) {
         this.program = program;
+        this.backend = backend;
         this.started = false;
+        this.finished = false;
+        this.cpu = new Semaphore(0);
     }
     
     public boolean isStarted() {
         return started;
     }
     
+    /**
+     * Marks the process as a kernel service whose thread doesn't keep the JVM running
+     * Must be called before the process is started
+     */
+    void setDaemon() {
+        daemon = true;
+    }
+    
     /**
      * Gets the program associated with this process
      * @return The program
@@ -39,60 +75,128 @@ public class Process {
     }
     
     /**
-     * Starts the process
+     * Checks if the program has returned or exited
+     * @return true once the process is finished
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+    
+    /**
+     * Starts the process thread
+     * The thread parks immediately and only runs the program once dispatched
      */
     public void start() {
         if (!started) {
-            thread = new Thread(program);
-            thread.start();
+            thread = backend.newThread(this::runProgram, program.getClass().getSimpleName());
+            if (daemon) {
+                thread.setDaemon(true);
+            }
             started = true;
+            thread.start();
+        }
+    }
+    
+    /**
+     * Body of the process thread
+     */
+    private void runProgram() {
+        CURRENT.set(this);
+        park();
+        boolean exited = false;
+        try {
+            program.run();
+        } catch (Exit e) {
+            exited = true;
+        } finally {
+            finished = true;
+            if (!exited) {
+                // Returning from the program is an implicit exit, which hands the CPU on
+                try {
+                    OS.exit();
+                } catch (Exit e) {
+                    // Expected, the kernel has already moved on
+                }
+            }
         }
     }
     
     /**
-     * Resumes the process
-     * Note: In a real cooperative multitasking system, this would be more complex
-     * For this simulation, we're simplifying by using Java threads
+     * Resumes the process by handing it the CPU token
      */
     public void resume() {
-        // In a real cooperative system, we would need to save and restore state
-        // For this simulation, Java's thread scheduler handles this for us
+        cpu.release();
     }
     
     /**
-     * Clears the TLB (called during context switch)
+     * Blocks the calling thread until the kernel hands this process the CPU token
      */
-    public static void clearTLB() {
-        for (int i = 0; i < TLB_SIZE; i++) {
-            tlb[i][0] = -1; // Invalid virtual page
-            tlb[i][1] = -1; // Invalid physical page
+    public void park() {
+        cpu.acquireUninterruptibly();
+    }
+    
+    /**
+     * Checks if the calling thread is this process's thread
+     * @return true if called from this process
+     */
+    public boolean isCurrentThread() {
+        return thread == Thread.currentThread();
+    }
+    
+    /**
+     * Thrown by the kernel to unwind a process thread after OS.exit()
+     */
+    static final class Exit extends Error {
+        private static final long serialVersionUID = 1L;
+        
+        Exit() {
+            super(null, null, false, false);
         }
     }
     
     /**
-     * Updates the TLB with a new mapping
-     * @param virtualPage Virtual page number
-     * @param physicalPage Physical page number
+     * Gets the process whose thread is calling
+     * @return The calling process, or null if called from outside any process thread
      */
-    public static void updateTLB(int virtualPage, int physicalPage) {
-        // Simple random replacement policy
-        int index = (int)(Math.random() * TLB_SIZE);
-        tlb[index][0] = virtualPage;
-        tlb[index][1] = physicalPage;
+    public static Process current() {
+        return CURRENT.get();
     }
     
     /**
-     * Checks if a virtual page is in the TLB
-     * @param virtualPage Virtual page number to check
-     * @return Physical page number, or -1 if not in TLB
+     * Gets the kernel's control block for this process
+     * @return The PCB, or null if the kernel doesn't manage this process
      */
-    private static int checkTLB(int virtualPage) {
-        for (int i = 0; i < TLB_SIZE; i++) {
-            if (tlb[i][0] == virtualPage) {
-                return tlb[i][1];
+    public PCB getPcb() {
+        return pcb;
+    }
+    
+    void setPcb(PCB pcb) {
+        this.pcb = pcb;
+    }
+    
+    /**
+     * Translates a virtual page of the calling process to a physical page
+     * Checks the TLB of the caller's CPU first and asks the kernel on a miss,
+     * which is also how the page's accessed and dirty bits get set
+     * @param virtualPage Virtual page number
+     * @param write true if the access is a write
+     * @return Physical page number, or -1 if the page is not mapped
+     */
+    private static int translate(int virtualPage, boolean write) {
+        Process self = CURRENT.get();
+        PCB owner = self != null ? self.pcb : null;
+        CPU cpu = owner != null ? owner.getCpu() : null;
+        
+        // Check TLB for the mapping
+        if (cpu != null) {
+            int physicalPage = cpu.getTLB().lookup(owner.getPid(), virtualPage, write);
+            if (physicalPage != -1) {
+                return physicalPage;
             }
         }
-        return -1; // Not found in TLB
+        
+        // If not in TLB, get mapping from kernel
+        return OS.getMapping(virtualPage, write);
     }
     
     /**
@@ -102,27 +206,10 @@ public class Process {
      * @throws MemoryAccessException If the memory access is invalid
      */
     public byte read(int virtualAddress) throws MemoryAccessException {
-        if (virtualAddress < 0) {
-            throw new MemoryAccessException("Invalid virtual address: " + virtualAddress);
-        }
+        // Memory access counts as a kernel entry for preemption
+        OS.checkPreemption();
         
-        // Calculate virtual page and offset
-        int virtualPage = virtualAddress / PAGE_SIZE;
-        int offset = virtualAddress % PAGE_SIZE;
-        
-        // Check TLB for the mapping
-        int physicalPage = checkTLB(virtualPage);
-        
-        // If not in TLB, get mapping from kernel
-        if (physicalPage == -1) {
-            physicalPage = OS.getMapping(virtualPage);
-            if (physicalPage == -1) {
-                throw new MemoryAccessException("Memory access violation at address: " + virtualAddress);
-            }
-        }
-        
-        // Calculate physical address
-        int physicalAddress = physicalPage * PAGE_SIZE + offset;
+        int physicalAddress = toPhysical(virtualAddress, false);
         
         // Read from memory
         return memory[physicalAddress];
@@ -135,30 +222,385 @@ public class Process {
      * @throws MemoryAccessException If the memory access is invalid
      */
     public void write(int virtualAddress, byte value) throws MemoryAccessException {
+        // Memory access counts as a kernel entry for preemption
+        OS.checkPreemption();
+        
+        int physicalAddress = toPhysical(virtualAddress, true);
+        
+        // Write to memory
+        memory[physicalAddress] = value;
+    }
+    
+    /**
+     * Reads a block of memory into an array
+     * Translates once per page and copies whole page runs at a time
+     * @param virtualAddress Virtual address to start reading at
+     * @param buffer Destination array
+     * @param offset Start index in the destination array
+     * @param length Number of bytes to read
+     * @throws MemoryAccessException If any byte of the range is not accessible
+     */
+    public void readBytes(int virtualAddress, byte[] buffer, int offset, int length) throws MemoryAccessException {
+        Objects.checkFromIndexSize(offset, length, buffer.length);
+        while (length > 0) {
+            OS.checkPreemption();
+            int chunk = Math.min(length, bytesLeftInPage(virtualAddress));
+            System.arraycopy(memory, toPhysical(virtualAddress, false), buffer, offset, chunk);
+            virtualAddress += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+    
+    /**
+     * Reads memory into a buffer, filling it from its position to its limit
+     * @param virtualAddress Virtual address to start reading at
+     * @param destination Buffer to fill; its position is advanced
+     * @throws MemoryAccessException If any byte of the range is not accessible
+     */
+    public void readBytes(int virtualAddress, ByteBuffer destination) throws MemoryAccessException {
+        while (destination.hasRemaining()) {
+            OS.checkPreemption();
+            int chunk = Math.min(destination.remaining(), bytesLeftInPage(virtualAddress));
+            destination.put(memory, toPhysical(virtualAddress, false), chunk);
+            virtualAddress += chunk;
+        }
+    }
+    
+    /**
+     * Writes a block of memory from an array
+     * Translates once per page and copies whole page runs at a time
+     * @param virtualAddress Virtual address to start writing at
+     * @param buffer Source array
+     * @param offset Start index in the source array
+     * @param length Number of bytes to write
+     * @throws MemoryAccessException If any byte of the range is not accessible
+     */
+    public void writeBytes(int virtualAddress, byte[] buffer, int offset, int length) throws MemoryAccessException {
+        Objects.checkFromIndexSize(offset, length, buffer.length);
+        while (length > 0) {
+            OS.checkPreemption();
+            int chunk = Math.min(length, bytesLeftInPage(virtualAddress));
+            System.arraycopy(buffer, offset, memory, toPhysical(virtualAddress, true), chunk);
+            virtualAddress += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+    
+    /**
+     * Writes the remaining bytes of a buffer to memory
+     * @param virtualAddress Virtual address to start writing at
+     * @param source Buffer to drain; its position is advanced
+     * @throws MemoryAccessException If any byte of the range is not accessible
+     */
+    public void writeBytes(int virtualAddress, ByteBuffer source) throws MemoryAccessException {
+        while (source.hasRemaining()) {
+            OS.checkPreemption();
+            int chunk = Math.min(source.remaining(), bytesLeftInPage(virtualAddress));
+            source.get(memory, toPhysical(virtualAddress, true), chunk);
+            virtualAddress += chunk;
+        }
+    }
+    
+    /**
+     * Sets a block of memory to one value
+     * @param virtualAddress Virtual address to start at
+     * @param length Number of bytes to set
+     * @param value The byte to write
+     * @throws MemoryAccessException If any byte of the range is not accessible
+     * @throws IndexOutOfBoundsException If length is negative
+     */
+    public void fill(int virtualAddress, int length, byte value) throws MemoryAccessException {
+        Objects.checkFromIndexSize(0, length, Integer.MAX_VALUE);
+        while (length > 0) {
+            OS.checkPreemption();
+            int chunk = Math.min(length, bytesLeftInPage(virtualAddress));
+            int physicalAddress = toPhysical(virtualAddress, true);
+            Arrays.fill(memory, physicalAddress, physicalAddress + chunk, value);
+            virtualAddress += chunk;
+            length -= chunk;
+        }
+    }
+    
+    /**
+     * Copies a block of memory within this process's address space
+     * Overlapping ranges are handled (like memmove). The destination page is
+     * translated first, and a fault bringing in the source page never evicts
+     * it, since the kernel keeps pages under access resident.
+     * @param destination Virtual address to copy to
+     * @param source Virtual address to copy from
+     * @param length Number of bytes to copy
+     * @throws MemoryAccessException If any byte of either range is not accessible
+     * @throws IndexOutOfBoundsException If length is negative
+     */
+    public void memcpy(int destination, int source, int length) throws MemoryAccessException {
+        Objects.checkFromIndexSize(0, length, Integer.MAX_VALUE);
+        if (length == 0 || destination == source) {
+            return;
+        }
+        
+        // A range running past the largest address would wrap around in the loops below
+        if ((long) Math.max(source, destination) + length > Integer.MAX_VALUE) {
+            throw new MemoryAccessException("Memory access violation at address: " + Integer.MAX_VALUE);
+        }
+        if (destination < source || destination >= source + length) {
+            // Copy front to back; each chunk stays within one source and one destination page
+            while (length > 0) {
+                OS.checkPreemption();
+                int chunk = Math.min(length, Math.min(bytesLeftInPage(source), bytesLeftInPage(destination)));
+                int to = toPhysical(destination, true);
+                System.arraycopy(memory, toPhysical(source, false), memory, to, chunk);
+                source += chunk;
+                destination += chunk;
+                length -= chunk;
+            }
+        } else {
+            // Destination overlaps the tail of the source, copy back to front
+            int sourceEnd = source + length;
+            int destinationEnd = destination + length;
+            while (length > 0) {
+                OS.checkPreemption();
+                int chunk = Math.min(length, Math.min(bytesBeforeInPage(sourceEnd), bytesBeforeInPage(destinationEnd)));
+                sourceEnd -= chunk;
+                destinationEnd -= chunk;
+                int to = toPhysical(destinationEnd, true);
+                System.arraycopy(memory, toPhysical(sourceEnd, false), memory, to, chunk);
+                length -= chunk;
+            }
+        }
+    }
+    
+    /**
+     * Reads a little-endian short from memory
+     * @param virtualAddress Virtual address of the first byte
+     * @return The value
+     * @throws MemoryAccessException If any byte of the value is not accessible
+     */
+    public short readShort(int virtualAddress) throws MemoryAccessException {
+        return readShort(virtualAddress, ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Reads a short from memory
+     * @param virtualAddress Virtual address of the first byte
+     * @param order Byte order of the value in memory
+     * @return The value
+     * @throws MemoryAccessException If any byte of the value is not accessible
+     */
+    public short readShort(int virtualAddress, ByteOrder order) throws MemoryAccessException {
+        OS.checkPreemption();
+        if (bytesLeftInPage(virtualAddress) < Short.BYTES) {
+            return (short) readStraddling(virtualAddress, Short.BYTES, order);
+        }
+        VarHandle view = order == ByteOrder.LITTLE_ENDIAN ? SHORT_LE : SHORT_BE;
+        return (short) view.get(memory, toPhysical(virtualAddress, false));
+    }
+    
+    /**
+     * Writes a little-endian short to memory
+     * @param virtualAddress Virtual address of the first byte
+     * @param value The value to write
+     * @throws MemoryAccessException If any byte of the value is not accessible
+     */
+    public void writeShort(int virtualAddress, short value) throws MemoryAccessException {
+        writeShort(virtualAddress, value, ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Writes a short to memory
+     * @param virtualAddress Virtual address of the first byte
+     * @param value The value to write
+     * @param order Byte order of the value in memory
+     * @throws MemoryAccessException If any byte of the value is not accessible
+     */
+    public void writeShort(int virtualAddress, short value, ByteOrder order) throws MemoryAccessException {
+        OS.checkPreemption();
+        if (bytesLeftInPage(virtualAddress) < Short.BYTES) {
+            writeStraddling(virtualAddress, Short.BYTES, value, order);
+            return;
+        }
+        VarHandle view = order == ByteOrder.LITTLE_ENDIAN ? SHORT_LE : SHORT_BE;
+        view.set(memory, toPhysical(virtualAddress, true), value);
+    }
+    
+    /**
+     * Reads a little-endian int from memory
+     * @param virtualAddress Virtual address of the first byte
+     * @return The value
+     * @throws MemoryAccessException If any byte of the value is not accessible
+     */
+    public int readInt(int virtualAddress) throws MemoryAccessException {
+        return readInt(virtualAddress, ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Reads an int from memory
+     * @param virtualAddress Virtual address of the first byte
+     * @param order Byte order of the value in memory
+     * @return The value
+     * @throws MemoryAccessException If any byte of the value is not accessible
+     */
+    public int readInt(int virtualAddress, ByteOrder order) throws MemoryAccessException {
+        OS.checkPreemption();
+        if (bytesLeftInPage(virtualAddress) < Integer.BYTES) {
+            return (int) readStraddling(virtualAddress, Integer.BYTES, order);
+        }
+        VarHandle view = order == ByteOrder.LITTLE_ENDIAN ? INT_LE : INT_BE;
+        return (int) view.get(memory, toPhysical(virtualAddress, false));
+    }
+    
+    /**
+     * Writes a little-endian int to memory
+     * @param virtualAddress Virtual address of the first byte
+     * @param value The value to write
+     * @throws MemoryAccessException If any byte of the value is not accessible
+     */
+    public void writeInt(int virtualAddress, int value) throws MemoryAccessException {
+        writeInt(virtualAddress, value, ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Writes an int to memory
+     * @param virtualAddress Virtual address of the first byte
+     * @param value The value to write
+     * @param order Byte order of the value in memory
+     * @throws MemoryAccessException If any byte of the value is not accessible
+     */
+    public void writeInt(int virtualAddress, int value, ByteOrder order) throws MemoryAccessException {
+        OS.checkPreemption();
+        if (bytesLeftInPage(virtualAddress) < Integer.BYTES) {
+            writeStraddling(virtualAddress, Integer.BYTES, value, order);
+            return;
+        }
+        VarHandle view = order == ByteOrder.LITTLE_ENDIAN ? INT_LE : INT_BE;
+        view.set(memory, toPhysical(virtualAddress, true), value);
+    }
+    
+    /**
+     * Reads a little-endian long from memory
+     * @param virtualAddress Virtual address of the first byte
+     * @return The value
+     * @throws MemoryAccessException If any byte of the value is not accessible
+     */
+    public long readLong(int virtualAddress) throws MemoryAccessException {
+        return readLong(virtualAddress, ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Reads a long from memory
+     * @param virtualAddress Virtual address of the first byte
+     * @param order Byte order of the value in memory
+     * @return The value
+     * @throws MemoryAccessException If any byte of the value is not accessible
+     */
+    public long readLong(int virtualAddress, ByteOrder order) throws MemoryAccessException {
+        OS.checkPreemption();
+        if (bytesLeftInPage(virtualAddress) < Long.BYTES) {
+            return readStraddling(virtualAddress, Long.BYTES, order);
+        }
+        VarHandle view = order == ByteOrder.LITTLE_ENDIAN ? LONG_LE : LONG_BE;
+        return (long) view.get(memory, toPhysical(virtualAddress, false));
+    }
+    
+    /**
+     * Writes a little-endian long to memory
+     * @param virtualAddress Virtual address of the first byte
+     * @param value The value to write
+     * @throws MemoryAccessException If any byte of the value is not accessible
+     */
+    public void writeLong(int virtualAddress, long value) throws MemoryAccessException {
+        writeLong(virtualAddress, value, ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Writes a long to memory
+     * @param virtualAddress Virtual address of the first byte
+     * @param value The value to write
+     * @param order Byte order of the value in memory
+     * @throws MemoryAccessException If any byte of the value is not accessible
+     */
+    public void writeLong(int virtualAddress, long value, ByteOrder order) throws MemoryAccessException {
+        OS.checkPreemption();
+        if (bytesLeftInPage(virtualAddress) < Long.BYTES) {
+            writeStraddling(virtualAddress, Long.BYTES, value, order);
+            return;
+        }
+        VarHandle view = order == ByteOrder.LITTLE_ENDIAN ? LONG_LE : LONG_BE;
+        view.set(memory, toPhysical(virtualAddress, true), value);
+    }
+    
+    /**
+     * Slow path for a value that crosses a page boundary: assembles it byte by byte
+     * @param virtualAddress Virtual address of the first byte
+     * @param size Size of the value in bytes
+     * @param order Byte order of the value in memory
+     * @return The value, in the low bytes of the result
+     * @throws MemoryAccessException If any byte of the value is not accessible
+     */
+    private static long readStraddling(int virtualAddress, int size, ByteOrder order) throws MemoryAccessException {
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            long b = memory[toPhysical(virtualAddress + i, false)] & 0xFF;
+            if (order == ByteOrder.LITTLE_ENDIAN) {
+                value |= b << (8 * i);
+            } else {
+                value = (value << 8) | b;
+            }
+        }
+        return value;
+    }
+    
+    /**
+     * Slow path for a value that crosses a page boundary: stores it byte by byte
+     * @param virtualAddress Virtual address of the first byte
+     * @param size Size of the value in bytes
+     * @param value The value, in the low bytes
+     * @param order Byte order of the value in memory
+     * @throws MemoryAccessException If any byte of the value is not accessible
+     */
+    private static void writeStraddling(int virtualAddress, int size, long value, ByteOrder order) throws MemoryAccessException {
+        for (int i = 0; i < size; i++) {
+            int shift = order == ByteOrder.LITTLE_ENDIAN ? 8 * i : 8 * (size - 1 - i);
+            memory[toPhysical(virtualAddress + i, true)] = (byte) (value >>> shift);
+        }
+    }
+    
+    /**
+     * Translates a virtual address of the calling process to an index into physical memory
+     * @param virtualAddress The virtual address
+     * @param write true if the access is a write
+     * @return The physical address
+     * @throws MemoryAccessException If the address is invalid or not mapped
+     */
+    private static int toPhysical(int virtualAddress, boolean write) throws MemoryAccessException {
         if (virtualAddress < 0) {
             throw new MemoryAccessException("Invalid virtual address: " + virtualAddress);
         }
         
         // Calculate virtual page and offset
-        int virtualPage = virtualAddress / PAGE_SIZE;
-        int offset = virtualAddress % PAGE_SIZE;
+        int virtualPage = virtualAddress >>> pageShift;
+        int offset = virtualAddress & (pageSize - 1);
         
-        // Check TLB for the mapping
-        int physicalPage = checkTLB(virtualPage);
-        
-        // If not in TLB, get mapping from kernel
+        // Translate through the TLB, or the kernel on a miss
+        int physicalPage = translate(virtualPage, write);
         if (physicalPage == -1) {
-            physicalPage = OS.getMapping(virtualPage);
-            if (physicalPage == -1) {
-                throw new MemoryAccessException("Memory access violation at address: " + virtualAddress);
-            }
+            throw new MemoryAccessException("Memory access violation at address: " + virtualAddress);
         }
         
         // Calculate physical address
-        int physicalAddress = physicalPage * PAGE_SIZE + offset;
-        
-        // Write to memory
-        memory[physicalAddress] = value;
+        return (physicalPage << pageShift) + offset;
+    }
+    
+    // Bytes from an address to the end of its page
+    private static int bytesLeftInPage(int virtualAddress) {
+        return pageSize - (virtualAddress & (pageSize - 1));
+    }
+    
+    // Bytes from the start of the page up to (not including) an end address
+    private static int bytesBeforeInPage(int endAddress) {
+        int offset = endAddress & (pageSize - 1);
+        return offset == 0 ? pageSize : offset;
     }
     
     /**
@@ -168,4 +610,25 @@ public class Process {
     public static byte[] getMemory() {
         return memory;
     }
+    
+    /**
+     * Gets the page size of the machine
+     * @return Bytes per page
+     */
+    public static int getPageSize() {
+        return pageSize;
+    }
+    
+    /**
+     * Lays physical memory out for a kernel's geometry
+     * Called once by the kernel before any process runs
+     * @param geometry The memory geometry
+     */
+    static void setGeometry(MemoryGeometry geometry) {
+        if (geometry.getPhysicalMemory() != memory.length) {
+            memory = new byte[geometry.getPhysicalMemory()];
+        }
+        pageSize = geometry.getPageSize();
+        pageShift = geometry.getPageShift();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+package OperationSystem;
+
+/**
+ * ReplacementPolicy interface - Chooses which resident page to evict when
+ * physical memory runs out
+ * Policies are driven by the FrameTable, which serializes every call.
+ */
+public interface ReplacementPolicy {
+    /**
+     * Sets up per-frame state for a frame table (called before any other method)
+     * @param frames The frame table
+     */
+    void init(FrameTable frames);
+
+    /**
+     * Chooses the next frame to evict
+     * @param frames The frame table
+     * @return An evictable frame, or -1 if there is none
+     */
+    int selectVictim(FrameTable frames);
+
+    /**
+     * Called when a frame starts holding a swappable page
+     * @param frames The frame table
+     * @param frame The physical frame
+     */
+    default void onLoad(FrameTable frames, int frame) {
+    }
+
+    /**
+     * Called when a frame stops holding a swappable page
+     * @param frames The frame table
+     * @param frame The physical frame
+     */
+    default void onFree(FrameTable frames, int frame) {
+    }
+
+    /**
+     * Called periodically from the timer interrupt
+     * @param frames The frame table
+     */
+    default void onTick(FrameTable frames) {
+    }
+
+    /**
+     * Looks up a policy by name ("clock", "second-chance" or "aging")
+     * @param name The policy name
+     * @return A new policy instance
+     */
+    static ReplacementPolicy forName(String name) {
+        if ("clock".equalsIgnoreCase(name)) {
+            return new ClockPolicy();
+        }
+        if ("second-chance".equalsIgnoreCase(name)) {
+            return new SecondChancePolicy();
+        }
+        if ("aging".equalsIgnoreCase(name)) {
+            return new AgingPolicy();
+        }
+        throw new IllegalArgumentException("Unknown replacement policy: " + name);
+    }
+}
@@ -0,0 +1,138 @@
+package OperationSystem;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * RingBuffer - Bounded lock-free queue over a fixed array
+ * Any number of threads may offer and poll at once. Each slot carries a
+ * sequence number that tells whether it is free for the producer claiming
+ * that position or filled for the consumer claiming it, so a producer or
+ * consumer only needs one compare-and-set on the tail or head, and nothing
+ * is allocated per element.
+ * @param <T> The element type
+ */
+public class RingBuffer<T> {
+    private final Object[] elements;
+    private final AtomicLongArray sequences; // Position a slot is ready for: +0 to fill, +1 to take
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // Next position to take
+    private final AtomicLong tail = new AtomicLong(); // Next position to fill
+
+    /**
+     * Creates an empty ring buffer
+     * @param capacity Most elements it holds (rounded up to a power of two, at least 2)
+     */
+    public RingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Ring buffer capacity out of range: " + capacity);
+        }
+        // With one slot, a filled slot's sequence reads as free for the next
+        // lap, so a producer would overwrite an element nobody took yet
+        int size = Math.max(2, Integer.highestOneBit(capacity));
+        if (size < capacity) {
+            size <<= 1;
+        }
+        elements = new Object[size];
+        sequences = new AtomicLongArray(size);
+        mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element at the tail
+     * @param element The element, not null
+     * @return true if added, false if the buffer is full
+     */
+    public boolean offer(T element) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long lag = sequences.get(index) - position;
+            if (lag == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements[index] = element;
+                    sequences.set(index, position + 1); // Publishes the element
+                    return true;
+                }
+                position = tail.get();
+            } else if (lag < 0) {
+                return false; // The slot still holds the element from one lap ago
+            } else {
+                position = tail.get(); // Another producer took this position
+            }
+        }
+    }
+
+    /**
+     * Removes the element at the head
+     * @return The element, or null if the buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long lag = sequences.get(index) - (position + 1);
+            if (lag == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    T element = (T) elements[index];
+                    elements[index] = null;
+                    sequences.set(index, position + elements.length); // Frees the slot for the next lap
+                    return element;
+                }
+                position = head.get();
+            } else if (lag < 0) {
+                return null; // Not filled yet
+            } else {
+                position = head.get(); // Another consumer took this position
+            }
+        }
+    }
+
+    /**
+     * Checks if the element at the head is ready to be taken
+     * @return true if poll would find an element
+     */
+    public boolean isEmpty() {
+        while (true) {
+            long position = head.get();
+            long lag = sequences.get((int) position & mask) - (position + 1);
+            if (lag <= 0) {
+                return lag < 0;
+            }
+        }
+    }
+
+    /**
+     * Checks if every slot is taken
+     * @return true if offer would fail
+     */
+    public boolean isFull() {
+        while (true) {
+            long position = tail.get();
+            long lag = sequences.get((int) position & mask) - position;
+            if (lag <= 0) {
+                return lag < 0;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of elements, which may be stale by the time it returns
+     * @return The element count
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(tail.get() - head.get(), elements.length));
+    }
+
+    /**
+     * Gets the most elements the buffer holds
+     * @return The capacity
+     */
+    public int capacity() {
+        return elements.length;
+    }
+}
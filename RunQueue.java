@@ -0,0 +1,123 @@
+package OperationSystem;
+
+/**
+ * RunQueue - Multilevel queue of runnable processes
+ * One FIFO per priority level, linked through the PCBs themselves,
+ * plus a bitmap of non-empty levels so every operation is O(1)
+ */
+public class RunQueue {
+    private static final int LEVELS = Priority.values().length;
+
+    private final PCB[] heads;
+    private final PCB[] tails;
+    private int nonEmptyLevels; // Bit n is set when level n has at least one process
+    private int size;
+
+    public RunQueue() {
+        heads = new PCB[LEVELS];
+        tails = new PCB[LEVELS];
+        nonEmptyLevels = 0;
+        size = 0;
+    }
+
+    /**
+     * Adds a process to the tail of the queue for its priority
+     * @param pcb The process to add
+     * @return true if added, false if it was already queued
+     */
+    public boolean enqueue(PCB pcb) {
+        if (pcb.runQueueLevel != -1) {
+            return false;
+        }
+
+        int level = pcb.getPriority().ordinal();
+        pcb.runQueueLevel = level;
+        pcb.runNext = null;
+        pcb.runPrev = tails[level];
+
+        if (tails[level] == null) {
+            heads[level] = pcb;
+        } else {
+            tails[level].runNext = pcb;
+        }
+        tails[level] = pcb;
+
+        nonEmptyLevels |= 1 << level;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes the process at the head of the highest non-empty priority level
+     * @return The next process to run, or null if the queue is empty
+     */
+    public PCB dequeue() {
+        if (nonEmptyLevels == 0) {
+            return null;
+        }
+
+        // Lowest set bit is the highest priority (REALTIME is ordinal 0)
+        PCB pcb = heads[Integer.numberOfTrailingZeros(nonEmptyLevels)];
+        remove(pcb);
+        return pcb;
+    }
+
+    /**
+     * Unlinks a process from wherever it sits in the queue
+     * @param pcb The process to remove
+     * @return true if removed, false if it was not queued
+     */
+    public boolean remove(PCB pcb) {
+        int level = pcb.runQueueLevel;
+        if (level == -1) {
+            return false;
+        }
+
+        if (pcb.runPrev == null) {
+            heads[level] = pcb.runNext;
+        } else {
+            pcb.runPrev.runNext = pcb.runNext;
+        }
+
+        if (pcb.runNext == null) {
+            tails[level] = pcb.runPrev;
+        } else {
+            pcb.runNext.runPrev = pcb.runPrev;
+        }
+
+        if (heads[level] == null) {
+            nonEmptyLevels &= ~(1 << level);
+        }
+
+        pcb.runNext = null;
+        pcb.runPrev = null;
+        pcb.runQueueLevel = -1;
+        size--;
+        return true;
+    }
+
+    /**
+     * Checks if a process is currently queued
+     * @param pcb The process to check
+     * @return true if the process is in this queue
+     */
+    public boolean contains(PCB pcb) {
+        return pcb.runQueueLevel != -1;
+    }
+
+    /**
+     * Checks if there are no runnable processes
+     * @return true if every level is empty
+     */
+    public boolean isEmpty() {
+        return nonEmptyLevels == 0;
+    }
+
+    /**
+     * Gets the number of queued processes
+     * @return The number of processes across all levels
+     */
+    public int size() {
+        return size;
+    }
+}
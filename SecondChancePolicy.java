@@ -0,0 +1,85 @@
+package OperationSystem;
+
+/**
+ * SecondChancePolicy - FIFO page replacement with a second chance
+ * Frames queue up in the order their pages were loaded. The oldest page is
+ * evicted unless it was accessed since it last reached the head, in which
+ * case its accessed bit is cleared and it goes to the back of the queue.
+ * The queue is an intrusive doubly-linked list kept in int arrays.
+ */
+public class SecondChancePolicy implements ReplacementPolicy {
+    private static final int NONE = -1;
+
+    private int[] next;
+    private int[] prev;
+    private boolean[] queued;
+    private int head;
+    private int tail;
+    private int count;
+
+    @Override
+    public void init(FrameTable frames) {
+        next = new int[frames.size()];
+        prev = new int[frames.size()];
+        queued = new boolean[frames.size()];
+        head = NONE;
+        tail = NONE;
+        count = 0;
+    }
+
+    @Override
+    public void onLoad(FrameTable frames, int frame) {
+        if (!queued[frame]) {
+            append(frame);
+        }
+    }
+
+    @Override
+    public void onFree(FrameTable frames, int frame) {
+        if (queued[frame]) {
+            unlink(frame);
+        }
+    }
+
+    @Override
+    public int selectVictim(FrameTable frames) {
+        // Everyone gets at most one second chance per call
+        for (int step = 0; step <= count && head != NONE; step++) {
+            int frame = head;
+            unlink(frame);
+            append(frame);
+            if (!frames.testAndClearAccessed(frame)) {
+                return frame;
+            }
+        }
+        return head; // All accessed: plain FIFO
+    }
+
+    private void append(int frame) {
+        prev[frame] = tail;
+        next[frame] = NONE;
+        if (tail != NONE) {
+            next[tail] = frame;
+        } else {
+            head = frame;
+        }
+        tail = frame;
+        queued[frame] = true;
+        count++;
+    }
+
+    private void unlink(int frame) {
+        if (prev[frame] != NONE) {
+            next[prev[frame]] = next[frame];
+        } else {
+            head = next[frame];
+        }
+        if (next[frame] != NONE) {
+            prev[next[frame]] = prev[frame];
+        } else {
+            tail = prev[frame];
+        }
+        queued[frame] = false;
+        count--;
+    }
+}
@@ -0,0 +1,65 @@
+package OperationSystem;
+
+/**
+ * SharedMemorySegment - Named block of frames mapped into several processes
+ * Every process attached to the segment maps the same frames, so what one
+ * writes the others read without a copy. The frames are allocated up front
+ * and stay in memory; each mapping holds a reference to them and the segment
+ * itself one more, which it drops when the last process detaches.
+ */
+public class SharedMemorySegment {
+    private final String name;
+    private final int[] frames;
+    private int attachments; // Mappings in processes, guarded by the kernel's segment registry
+
+    /**
+     * Creates a segment over already allocated frames, attached once (to its creator)
+     * @param name Name processes attach it by
+     * @param frames Its frames, in page order
+     */
+    public SharedMemorySegment(String name, int[] frames) {
+        this.name = name;
+        this.frames = frames;
+        this.attachments = 1;
+    }
+
+    /**
+     * Gets the segment's name
+     * @return The name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the segment's size
+     * @return The size in pages
+     */
+    public int getPages() {
+        return frames.length;
+    }
+
+    /**
+     * Gets the frame behind one page of the segment
+     * @param page Page index within the segment
+     * @return The physical page number
+     */
+    public int getFrame(int page) {
+        return frames[page];
+    }
+
+    /**
+     * Records one more process mapping
+     */
+    public void attach() {
+        attachments++;
+    }
+
+    /**
+     * Records that a process mapping went away
+     * @return The number of mappings left
+     */
+    public int detach() {
+        return --attachments;
+    }
+}
@@ -0,0 +1,157 @@
+package OperationSystem;
+
+/**
+ * SharedMemoryTest - Shares a named memory segment between processes and
+ * checks that they all read and write the same memory, that a forked child
+ * shares it in place, and that the segment goes away with its last user
+ */
+public class SharedMemoryTest implements Runnable {
+    private static final String SEGMENT = "SharedMemoryTest";
+    private static final int PAGES = 4;
+    private static final int READERS = 4;
+    private static final int CHILD_SLOT = READERS + 1;
+    private static final int WAIT_MILLIS = 10;
+    private static final int WAIT_TRIES = 100;
+
+    @Override
+    public void run() {
+        System.out.println("SharedMemoryTest: Starting shared memory test...");
+        Process process = new Process(this);
+        int pageSize = OS.getPageSize();
+        int parentPid = OS.getPid();
+
+        try {
+            int address = OS.shmCreate(SEGMENT, PAGES * pageSize);
+            if (address == -1) {
+                System.out.println("SharedMemoryTest: Failed to create segment");
+                return;
+            }
+            System.out.println("SharedMemoryTest: Created segment " + SEGMENT + " at virtual address " + address);
+            if (OS.shmCreate(SEGMENT, pageSize) != -1) {
+                System.out.println("SharedMemoryTest: ERROR - Created a second segment with the same name");
+            }
+
+            // Page 0 holds one slot per reader and the child; the rest a pattern
+            for (int i = 1; i < PAGES; i++) {
+                process.writeInt(address + i * pageSize, i * 7);
+            }
+
+            // Readers check the pattern and mark their slot; half of them exit still attached
+            for (int i = 0; i < READERS; i++) {
+                OS.createProcess(new Reader(parentPid, i));
+            }
+            // A forked child writes the same memory, not a copy of it
+            if (OS.fork(new Child(parentPid, address)) == -1) {
+                System.out.println("SharedMemoryTest: ERROR - Fork failed");
+                return;
+            }
+            for (int i = 0; i < READERS + 1; i++) {
+                KernelMessage report = OS.waitForMessage();
+                if (report != null && report.getWhat() != 0) {
+                    System.out.println("SharedMemoryTest: ERROR - A process found " + report.getWhat() + " wrong values");
+                }
+                if (report != null) {
+                    report.recycle();
+                }
+            }
+            for (int i = 1; i <= READERS; i++) {
+                if (process.readInt(address + i * 4) != i) {
+                    System.out.println("SharedMemoryTest: ERROR - Reader " + (i - 1) + "'s write is not visible");
+                }
+            }
+            if (process.readInt(address + CHILD_SLOT * 4) != CHILD_SLOT) {
+                System.out.println("SharedMemoryTest: ERROR - Forked child's write is not visible");
+            }
+
+            // freeMemory leaves shared memory alone, only detaching unmaps it
+            OS.freeMemory(address, PAGES * pageSize);
+            if (process.readInt(address + pageSize) != 7) {
+                System.out.println("SharedMemoryTest: ERROR - freeMemory changed the segment");
+            }
+            System.out.println("SharedMemoryTest: Detached segment: " + OS.shmDetach(address));
+            if (OS.shmDetach(address)) {
+                System.out.println("SharedMemoryTest: ERROR - Detached the segment twice");
+            }
+
+            // Once the readers still attached have exited, the segment is gone
+            int attached = OS.shmAttach(SEGMENT);
+            for (int tries = 0; tries < WAIT_TRIES && attached != -1; tries++) {
+                OS.shmDetach(attached);
+                OS.sleep(WAIT_MILLIS);
+                attached = OS.shmAttach(SEGMENT);
+            }
+            if (attached != -1) {
+                System.out.println("SharedMemoryTest: ERROR - Segment outlived every process using it");
+            }
+        } catch (MemoryAccessException e) {
+            System.out.println("SharedMemoryTest: Exception: " + e.getMessage());
+        }
+
+        System.out.println("SharedMemoryTest: Shared memory test complete");
+    }
+
+    /**
+     * Attaches the segment by name, checks the pattern and marks its slot
+     */
+    private static class Reader implements Runnable {
+        private final int parentPid;
+        private final int index;
+
+        Reader(int parentPid, int index) {
+            this.parentPid = parentPid;
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            Process process = new Process(this);
+            int pageSize = OS.getPageSize();
+            int wrong = 0;
+            int address = OS.shmAttach(SEGMENT);
+            if (address == -1) {
+                wrong = PAGES;
+            } else {
+                try {
+                    for (int i = 1; i < PAGES; i++) {
+                        if (process.readInt(address + i * pageSize) != i * 7) {
+                            wrong++;
+                        }
+                    }
+                    process.writeInt(address + (index + 1) * 4, index + 1);
+                } catch (MemoryAccessException e) {
+                    wrong = PAGES;
+                }
+                // The others detach when they exit
+                if (index % 2 == 0 && !OS.shmDetach(address)) {
+                    wrong++;
+                }
+            }
+            OS.sendMessage(parentPid, wrong, new byte[1], 0, 1);
+        }
+    }
+
+    /**
+     * Writes its slot through the mapping it inherited
+     */
+    private static class Child implements Runnable {
+        private final int parentPid;
+        private final int address;
+
+        Child(int parentPid, int address) {
+            this.parentPid = parentPid;
+            this.address = address;
+        }
+
+        @Override
+        public void run() {
+            Process process = new Process(this);
+            int wrong = 0;
+            try {
+                process.writeInt(address + CHILD_SLOT * 4, CHILD_SLOT);
+            } catch (MemoryAccessException e) {
+                wrong = 1;
+            }
+            OS.sendMessage(parentPid, wrong, new byte[1], 0, 1);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package OperationSystem;
+
+import java.util.Arrays;
+
+/**
+ * SleepQueue - Min-heap of sleeping processes ordered by wake deadline
+ * Only processes whose deadline has passed are ever touched on wakeup
+ */
+public class SleepQueue {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private PCB[] heap;
+    private int size;
+
+    public SleepQueue() {
+        heap = new PCB[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * Adds a sleeping process (its wake deadline must already be set)
+     * @param pcb The process to add
+     */
+    public void add(PCB pcb) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        heap[size] = pcb;
+        siftUp(size++);
+    }
+
+    /**
+     * Removes the earliest sleeper if its deadline has passed
+     * @param now The current System.nanoTime() value
+     * @return The expired process, or null if none has expired
+     */
+    public PCB pollExpired(long now) {
+        if (size == 0 || !heap[0].shouldWake(now)) {
+            return null;
+        }
+
+        PCB first = heap[0];
+        heap[0] = heap[--size];
+        heap[size] = null;
+        if (size > 0) {
+            siftDown(0);
+        }
+        return first;
+    }
+
+    /**
+     * Checks if nobody is sleeping
+     * @return true if the queue is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the number of sleeping processes
+     * @return The number of sleepers
+     */
+    public int size() {
+        return size;
+    }
+
+    private void siftUp(int index) {
+        PCB pcb = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(pcb, heap[parent])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = pcb;
+    }
+
+    private void siftDown(int index) {
+        PCB pcb = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && before(heap[right], heap[child])) {
+                child = right;
+            }
+            if (!before(heap[child], pcb)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = pcb;
+    }
+
+    // Compare by difference so nanoTime wraparound is handled
+    private static boolean before(PCB a, PCB b) {
+        return a.getWakeDeadline() - b.getWakeDeadline() < 0;
+    }
+}
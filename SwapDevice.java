@@ -0,0 +1,80 @@
+package OperationSystem;
+
+/**
+ * SwapDevice interface - Backing store for pages evicted from memory
+ * Pages are addressed by swap slot; slot n holds the bytes at n * pageSize
+ * in the swap file. Implementations copy straight between physical memory
+ * and the file, and must allow different slots to be used concurrently.
+ */
+public interface SwapDevice {
+    /**
+     * Copies a page from physical memory into a slot
+     * @param slot The swap slot
+     * @param memory Physical memory
+     * @param offset Offset of the page in physical memory
+     */
+    void writePage(int slot, byte[] memory, int offset);
+
+    /**
+     * Copies a batch of pages from physical memory into slots
+     * Devices that can should turn runs of consecutive slots into one write
+     * @param slots The swap slot of each page
+     * @param offsets Offset of each page in physical memory
+     * @param count Number of pages in the batch
+     * @param memory Physical memory
+     */
+    default void writePages(int[] slots, int[] offsets, int count, byte[] memory) {
+        for (int i = 0; i < count; i++) {
+            writePage(slots[i], memory, offsets[i]);
+        }
+    }
+
+    /**
+     * Copies a slot into a page of physical memory
+     * @param slot The swap slot (must have been written)
+     * @param memory Physical memory
+     * @param offset Offset of the page in physical memory
+     */
+    void readPage(int slot, byte[] memory, int offset);
+
+    /**
+     * Copies a batch of slots into pages of physical memory
+     * Devices that can should turn runs of consecutive slots into one read
+     * @param slots The swap slot of each page (must have been written)
+     * @param offsets Offset of each page in physical memory
+     * @param count Number of pages in the batch
+     * @param memory Physical memory
+     */
+    default void readPages(int[] slots, int[] offsets, int count, byte[] memory) {
+        for (int i = 0; i < count; i++) {
+            readPage(slots[i], memory, offsets[i]);
+        }
+    }
+
+    /**
+     * Makes every page written so far durable on disk
+     */
+    void force();
+
+    /**
+     * Releases the swap file
+     */
+    void close();
+
+    /**
+     * Looks up a swap device by name ("mapped" or "file")
+     * @param name The device name
+     * @param path Path of the swap file (created, or emptied if it exists)
+     * @param pageSize Bytes per slot
+     * @return The device
+     */
+    static SwapDevice forName(String name, String path, int pageSize) {
+        if ("mapped".equalsIgnoreCase(name)) {
+            return new MappedSwapDevice(path, pageSize);
+        }
+        if ("file".equalsIgnoreCase(name)) {
+            return new FileSwapDevice(path, pageSize);
+        }
+        throw new IllegalArgumentException("Unknown swap device: " + name);
+    }
+}
@@ -0,0 +1,166 @@
+package OperationSystem;
+
+import java.util.Arrays;
+
+/**
+ * SwapSpace - Allocates page-sized slots in the swap file
+ * A bitmap marks the slots in use, so freed slots are handed out again and
+ * the swap file only grows to the peak number of swapped pages. Slots are
+ * grouped into clusters of 64 (one bitmap word). New slots come from the
+ * current cluster in order, so pages evicted one after another land next to
+ * each other on disk; when the cluster is used up the next completely free
+ * cluster is taken, and only when there is none left is the file grown or,
+ * if it is already mostly empty, a free slot anywhere reused.
+ */
+public class SwapSpace {
+    public static final int CLUSTER_SLOTS = 64;
+
+    private final int maxSlots;
+    private long[] usedBits;   // Bit i of word w is set when slot w * 64 + i is in use
+    private int clusters;      // Clusters the file extends over (words of usedBits in use)
+    private int usedSlots;
+    private int clusterNext;   // Next slot to try in the current cluster
+    private int clusterEnd;    // End of the current cluster, clusterNext == clusterEnd when there is none
+    private int searchHint;    // Cluster to start looking for a free one at
+
+    /**
+     * Creates an empty swap space
+     * @param maxSlots Largest number of slots the swap file may hold
+     */
+    public SwapSpace(int maxSlots) {
+        if (maxSlots <= 0) {
+            throw new IllegalArgumentException("Swap space must have at least one slot");
+        }
+        this.maxSlots = maxSlots;
+        this.usedBits = new long[16];
+        this.clusters = 0;
+        this.usedSlots = 0;
+        this.clusterNext = 0;
+        this.clusterEnd = 0;
+        this.searchHint = 0;
+    }
+
+    /**
+     * Allocates a slot, next to the previous one when possible
+     * @return The slot number, or -1 if the swap space is full
+     */
+    public synchronized int allocate() {
+        // Carry on in the current cluster
+        while (clusterNext < clusterEnd) {
+            int slot = clusterNext++;
+            if (!isUsed(slot)) {
+                markUsed(slot);
+                return slot;
+            }
+        }
+
+        // Start a new cluster: a free one, or a new one at the end of the file
+        // unless the file is mostly empty already and the free space is just scattered
+        int cluster = findFreeCluster();
+        if (cluster == -1 && (usedSlots >= clusters * CLUSTER_SLOTS / 2 || !hasFreeSlot())) {
+            cluster = grow();
+        }
+        if (cluster != -1) {
+            int slot = cluster * CLUSTER_SLOTS;
+            clusterNext = slot + 1;
+            clusterEnd = Math.min(slot + CLUSTER_SLOTS, maxSlots);
+            markUsed(slot);
+            return slot;
+        }
+
+        // No whole cluster left: take any free slot
+        for (int word = 0; word < clusters; word++) {
+            long free = ~usedBits[word];
+            if (free != 0) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(free);
+                if (slot < maxSlots) {
+                    markUsed(slot);
+                    return slot;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Frees a slot
+     * Freeing a slot that is already free is ignored
+     * @param slot The slot number
+     */
+    public synchronized void free(int slot) {
+        if (slot < 0 || slot >= clusters * CLUSTER_SLOTS || !isUsed(slot)) {
+            return;
+        }
+        usedBits[slot >>> 6] &= ~(1L << slot);
+        usedSlots--;
+        int cluster = slot / CLUSTER_SLOTS;
+        if (usedBits[cluster] == 0 && cluster < searchHint) {
+            searchHint = cluster;
+        }
+    }
+
+    /**
+     * Checks if a slot is allocated
+     * @param slot The slot number
+     * @return true if the slot is in use
+     */
+    public synchronized boolean isUsed(int slot) {
+        return slot >= 0 && slot < clusters * CLUSTER_SLOTS && (usedBits[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Gets the number of slots in use
+     * @return The used slot count
+     */
+    public synchronized int getUsedSlots() {
+        return usedSlots;
+    }
+
+    /**
+     * Gets the number of slots the swap file extends over
+     * @return The file size in slots
+     */
+    public synchronized int getFileSlots() {
+        return Math.min(clusters * CLUSTER_SLOTS, maxSlots);
+    }
+
+    /**
+     * Gets the largest number of slots the swap file may hold
+     * @return The slot limit
+     */
+    public int getMaxSlots() {
+        return maxSlots;
+    }
+
+    // Finds a cluster with no slot in use, starting at the hint
+    private int findFreeCluster() {
+        for (int cluster = searchHint; cluster < clusters; cluster++) {
+            if (usedBits[cluster] == 0 && cluster * CLUSTER_SLOTS < maxSlots) {
+                searchHint = cluster + 1;
+                return cluster;
+            }
+        }
+        searchHint = clusters;
+        return -1;
+    }
+
+    // Extends the file by one cluster, returning it, or -1 at the slot limit
+    private int grow() {
+        if ((long) clusters * CLUSTER_SLOTS >= maxSlots) {
+            return -1;
+        }
+        if (clusters == usedBits.length) {
+            usedBits = Arrays.copyOf(usedBits, usedBits.length * 2);
+        }
+        return clusters++;
+    }
+
+    private boolean hasFreeSlot() {
+        return usedSlots < getFileSlots();
+    }
+
+    private void markUsed(int slot) {
+        usedBits[slot >>> 6] |= 1L << slot;
+        usedSlots++;
+    }
+}
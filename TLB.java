@@ -0,0 +1,285 @@
+package OperationSystem;
+
+/**
+ * TLB - Translation Lookaside Buffer of one CPU
+ * Set-associative, with every entry tagged by the owning process's address
+ * space ID (its PID), so a context switch doesn't need to flush it.
+ * Replacement is LRU within a set, tracked with a use counter.
+ * Like a hardware TLB, an entry only allows writes once the page's dirty bit
+ * is set, so the first write to a clean page goes to the kernel to set it.
+ * A few extra fully-associative entries hold huge page translations, each
+ * covering PCB.HUGE_PAGE_PAGES virtual pages with a single entry.
+ * The last two translations handed out (a copy needs one for each side) stay
+ * "in use" until later lookups or a context switch replace them, since the
+ * access they were looked up for may still be under way; a shootdown waits
+ * for them the way a real one waits for acknowledgement.
+ */
+public class TLB {
+    public static final int DEFAULT_SETS = 16;
+    public static final int DEFAULT_WAYS = 4;
+    public static final int HUGE_ENTRIES = 8;
+
+    private static final int INVALID = -1;
+
+    private final int sets;
+    private final int ways;
+    private final int setMask;
+    private final int[] asids;         // [set * ways + way], INVALID if the entry is empty
+    private final int[] virtualPages;
+    private final int[] physicalPages;
+    private final boolean[] writable;  // Page was already dirty when the entry was filled
+    private final long[] lastUsed;     // Value of useCounter at the entry's last hit or fill
+    private final int[] hugeAsids;     // Huge page entries, same layout without sets
+    private final int[] hugeRegions;   // Virtual page >> PCB.HUGE_PAGE_ORDER
+    private final int[] hugeBases;     // First physical page of the huge page
+    private final long[] hugeLastUsed;
+    private final int[] inUseAsids = {INVALID, INVALID}; // Translations handed out for the access under way
+    private final int[] inUsePages = new int[2];
+    private int inUseNext;             // Slot the next translation handed out goes in
+    private long useCounter;
+    private long hits;
+    private long misses;
+
+    public TLB() {
+        this(DEFAULT_SETS, DEFAULT_WAYS);
+    }
+
+    /**
+     * Creates a TLB with the given geometry
+     * @param sets Number of sets (must be a power of two)
+     * @param ways Entries per set
+     */
+    public TLB(int sets, int ways) {
+        if (sets <= 0 || Integer.bitCount(sets) != 1 || ways <= 0) {
+            throw new IllegalArgumentException("TLB needs a power-of-two set count and at least one way");
+        }
+        this.sets = sets;
+        this.ways = ways;
+        this.setMask = sets - 1;
+        int size = sets * ways;
+        asids = new int[size];
+        virtualPages = new int[size];
+        physicalPages = new int[size];
+        writable = new boolean[size];
+        lastUsed = new long[size];
+        hugeAsids = new int[HUGE_ENTRIES];
+        hugeRegions = new int[HUGE_ENTRIES];
+        hugeBases = new int[HUGE_ENTRIES];
+        hugeLastUsed = new long[HUGE_ENTRIES];
+        clear();
+    }
+
+    /**
+     * Looks up a translation for a read
+     * @param asid Address space ID (PID) of the accessing process
+     * @param virtualPage Virtual page number to check
+     * @return Physical page number, or -1 if not in TLB
+     */
+    public int lookup(int asid, int virtualPage) {
+        return lookup(asid, virtualPage, false);
+    }
+    
+    /**
+     * Looks up a translation
+     * @param asid Address space ID (PID) of the accessing process
+     * @param virtualPage Virtual page number to check
+     * @param write true if the access is a write
+     * @return Physical page number, or -1 if not in TLB (or not yet writable)
+     */
+    public synchronized int lookup(int asid, int virtualPage, boolean write) {
+        int base = setOf(asid, virtualPage) * ways;
+        for (int i = base; i < base + ways; i++) {
+            if (asids[i] == asid && virtualPages[i] == virtualPage && (writable[i] || !write)) {
+                lastUsed[i] = ++useCounter;
+                hits++;
+                markInUse(asid, virtualPage);
+                return physicalPages[i];
+            }
+        }
+        int region = virtualPage >> PCB.HUGE_PAGE_ORDER;
+        for (int i = 0; i < HUGE_ENTRIES; i++) {
+            if (hugeAsids[i] == asid && hugeRegions[i] == region) {
+                hugeLastUsed[i] = ++useCounter;
+                hits++;
+                markInUse(asid, virtualPage);
+                return hugeBases[i] + (virtualPage & (PCB.HUGE_PAGE_PAGES - 1));
+            }
+        }
+        misses++;
+        return -1; // Not found in TLB
+    }
+
+    /**
+     * Adds or refreshes a writable translation, evicting the least recently used entry of its set
+     * @param asid Address space ID (PID) of the owning process
+     * @param virtualPage Virtual page number
+     * @param physicalPage Physical page number
+     */
+    public void update(int asid, int virtualPage, int physicalPage) {
+        update(asid, virtualPage, physicalPage, true);
+    }
+    
+    /**
+     * Adds or refreshes a translation, evicting the least recently used entry of its set
+     * The translation counts as in use, for the access that missed
+     * @param asid Address space ID (PID) of the owning process
+     * @param virtualPage Virtual page number
+     * @param physicalPage Physical page number
+     * @param dirty true if the page is already dirty, so writes may hit this entry
+     */
+    public synchronized void update(int asid, int virtualPage, int physicalPage, boolean dirty) {
+        int base = setOf(asid, virtualPage) * ways;
+        int victim = base;
+        for (int i = base; i < base + ways; i++) {
+            if (asids[i] == asid && virtualPages[i] == virtualPage) {
+                victim = i; // Already cached, just refresh it
+                break;
+            }
+            if (asids[i] == INVALID) {
+                victim = i;
+                break;
+            }
+            if (lastUsed[i] < lastUsed[victim]) {
+                victim = i;
+            }
+        }
+        asids[victim] = asid;
+        virtualPages[victim] = virtualPage;
+        physicalPages[victim] = physicalPage;
+        writable[victim] = dirty;
+        lastUsed[victim] = ++useCounter;
+        markInUse(asid, virtualPage);
+    }
+
+    /**
+     * Adds or refreshes a huge page translation, evicting the least recently used huge entry
+     * @param asid Address space ID (PID) of the owning process
+     * @param virtualPage Any virtual page inside the huge page
+     * @param physicalBase First physical page of the huge page
+     */
+    public synchronized void updateHuge(int asid, int virtualPage, int physicalBase) {
+        int region = virtualPage >> PCB.HUGE_PAGE_ORDER;
+        int victim = 0;
+        for (int i = 0; i < HUGE_ENTRIES; i++) {
+            if (hugeAsids[i] == asid && hugeRegions[i] == region) {
+                victim = i;
+                break;
+            }
+            if (hugeAsids[i] == INVALID) {
+                victim = i;
+                break;
+            }
+            if (hugeLastUsed[i] < hugeLastUsed[victim]) {
+                victim = i;
+            }
+        }
+        hugeAsids[victim] = asid;
+        hugeRegions[victim] = region;
+        hugeBases[victim] = physicalBase;
+        hugeLastUsed[victim] = ++useCounter;
+    }
+    
+    /**
+     * Drops the translation of one page (after it is freed or swapped out),
+     * including a huge page entry covering it
+     * @param asid Address space ID (PID) of the owning process
+     * @param virtualPage Virtual page number
+     */
+    public synchronized void invalidate(int asid, int virtualPage) {
+        int base = setOf(asid, virtualPage) * ways;
+        for (int i = base; i < base + ways; i++) {
+            if (asids[i] == asid && virtualPages[i] == virtualPage) {
+                asids[i] = INVALID;
+            }
+        }
+        int region = virtualPage >> PCB.HUGE_PAGE_ORDER;
+        for (int i = 0; i < HUGE_ENTRIES; i++) {
+            if (hugeAsids[i] == asid && hugeRegions[i] == region) {
+                hugeAsids[i] = INVALID;
+            }
+        }
+    }
+
+    /**
+     * Checks if the access under way on this TLB's CPU may be using a page's translation
+     * @param asid Address space ID (PID) of the owning process
+     * @param virtualPage Virtual page number
+     * @return true if that translation was the last one handed out
+     */
+    public synchronized boolean isInUse(int asid, int virtualPage) {
+        return (inUseAsids[0] == asid && inUsePages[0] == virtualPage)
+                || (inUseAsids[1] == asid && inUsePages[1] == virtualPage);
+    }
+
+    /**
+     * Notes that the CPU has finished the access it last translated for
+     */
+    public synchronized void endAccess() {
+        inUseAsids[0] = INVALID;
+        inUseAsids[1] = INVALID;
+    }
+
+    /**
+     * Drops every translation of one address space (when the process exits)
+     * @param asid Address space ID (PID) of the process
+     */
+    public synchronized void invalidateAll(int asid) {
+        for (int i = 0; i < asids.length; i++) {
+            if (asids[i] == asid) {
+                asids[i] = INVALID;
+            }
+        }
+        for (int i = 0; i < HUGE_ENTRIES; i++) {
+            if (hugeAsids[i] == asid) {
+                hugeAsids[i] = INVALID;
+            }
+        }
+    }
+
+    /**
+     * Clears every entry
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < asids.length; i++) {
+            asids[i] = INVALID;
+            virtualPages[i] = INVALID;
+            physicalPages[i] = INVALID;
+            writable[i] = false;
+            lastUsed[i] = 0;
+        }
+        for (int i = 0; i < HUGE_ENTRIES; i++) {
+            hugeAsids[i] = INVALID;
+            hugeRegions[i] = INVALID;
+            hugeBases[i] = INVALID;
+            hugeLastUsed[i] = 0;
+        }
+        endAccess();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of entries the TLB can hold
+     * @return Sets times ways
+     */
+    public int capacity() {
+        return sets * ways;
+    }
+
+    private void markInUse(int asid, int virtualPage) {
+        inUseAsids[inUseNext] = asid;
+        inUsePages[inUseNext] = virtualPage;
+        inUseNext ^= 1;
+    }
+
+    // Mix the ASID in so equal virtual pages of different processes spread over the sets
+    private int setOf(int asid, int virtualPage) {
+        return (virtualPage ^ (asid * 0x9E3779B9 >>> 16)) & setMask;
+    }
+}
@@ -29,7 +29,7 @@ public class VFS implements Device {
     }
     
     @Override
-    public int Open(String s) {
+    public synchronized int Open(String s) {
         if (s == null || s.isEmpty()) {
             return -1;
         }
@@ -70,7 +70,7 @@ public class VFS implements Device {
     }
     
     @Override
-    public void Close(int id) {
+    public synchronized void Close(int id) {
         if (id >= 0 && id < deviceMappings.length && deviceMappings[id] != null) {
             DeviceMapping mapping = deviceMappings[id];
             mapping.device.Close(mapping.deviceId);
@@ -79,7 +79,7 @@ public class VFS implements Device {
     }
     
     @Override
-    public byte[] Read(int id, int size) {
+    public synchronized byte[] Read(int id, int size) {
         if (id >= 0 && id < deviceMappings.length && deviceMappings[id] != null) {
             DeviceMapping mapping = deviceMappings[id];
             return mapping.device.Read(mapping.deviceId, size);
@@ -88,7 +88,7 @@ public class VFS implements Device {
     }
     
     @Override
-    public void Seek(int id, int to) {
+    public synchronized void Seek(int id, int to) {
         if (id >= 0 && id < deviceMappings.length && deviceMappings[id] != null) {
             DeviceMapping mapping = deviceMappings[id];
             mapping.device.Seek(mapping.deviceId, to);
@@ -96,7 +96,7 @@ public class VFS implements Device {
     }
     
     @Override
-    public int Write(int id, byte[] data) {
+    public synchronized int Write(int id, byte[] data) {
         if (id >= 0 && id < deviceMappings.length && deviceMappings[id] != null) {
             DeviceMapping mapping = deviceMappings[id];
             return mapping.device.Write(mapping.deviceId, data);
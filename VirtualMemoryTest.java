@@ -17,7 +17,7 @@ public class VirtualMemoryTest implements Runnable {
             
             // Allocate memory in 1KB chunks
             for (int i = 0; i < totalPages; i++) {
-                addresses[i] = OS.allocateMemory(1024);
+                addresses[i] = OS.allocateMemory(OS.getPageSize());
                 if (addresses[i] == -1) {
                     System.out.println("VirtualMemoryTest: Failed to allocate page " + i);
                     break;
@@ -57,7 +57,7 @@ public class VirtualMemoryTest implements Runnable {
             System.out.println("VirtualMemoryTest: Freeing half the pages...");
             for (int i = 0; i < totalPages / 2; i++) {
                 if (addresses[i] != -1) {
-                    boolean freed = OS.freeMemory(addresses[i], 1024);
+                    boolean freed = OS.freeMemory(addresses[i], OS.getPageSize());
                     System.out.println("VirtualMemoryTest: Freed page " + i + ": " + freed);
                 }
             }
@@ -66,7 +66,7 @@ public class VirtualMemoryTest implements Runnable {
             System.out.println("VirtualMemoryTest: Allocating more pages...");
             int[] newAddresses = new int[totalPages / 2];
             for (int i = 0; i < totalPages / 2; i++) {
-                newAddresses[i] = OS.allocateMemory(1024);
+                newAddresses[i] = OS.allocateMemory(OS.getPageSize());
                 if (newAddresses[i] == -1) {
                     System.out.println("VirtualMemoryTest: Failed to allocate new page " + i);
                     break;
@@ -115,12 +115,12 @@ public class VirtualMemoryTest implements Runnable {
             System.out.println("VirtualMemoryTest: Freeing all memory...");
             for (int i = totalPages / 2; i < totalPages; i++) {
                 if (addresses[i] != -1) {
-                    OS.freeMemory(addresses[i], 1024);
+                    OS.freeMemory(addresses[i], OS.getPageSize());
                 }
             }
             for (int i = 0; i < totalPages / 2; i++) {
                 if (newAddresses[i] != -1) {
-                    OS.freeMemory(newAddresses[i], 1024);
+                    OS.freeMemory(newAddresses[i], OS.getPageSize());
                 }
             }
             
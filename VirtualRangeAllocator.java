@@ -0,0 +1,180 @@
+package OperationSystem;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * VirtualRangeAllocator - Hands out ranges of one process's virtual pages
+ * Free extents are kept in two trees, one by start page (to coalesce with
+ * neighbours on free) and one by length (for best fit), so allocate and
+ * free are O(log n) in the number of free extents.
+ */
+public class VirtualRangeAllocator {
+    private final int totalPages;
+    private final TreeMap<Integer, Integer> freeByStart; // Start page -> length
+    private final TreeSet<Long> freeBySize;              // (length << 32) | start
+    private int freePages;
+
+    /**
+     * Creates an allocator with the whole address space free
+     * @param totalPages Number of virtual pages
+     */
+    public VirtualRangeAllocator(int totalPages) {
+        this.totalPages = totalPages;
+        this.freeByStart = new TreeMap<>();
+        this.freeBySize = new TreeSet<>();
+        this.freePages = totalPages;
+        if (totalPages > 0) {
+            insert(0, totalPages);
+        }
+    }
+
+    /**
+     * Creates an allocator with the same pages handed out as another (for fork)
+     * @param other The allocator to copy
+     */
+    public VirtualRangeAllocator(VirtualRangeAllocator other) {
+        this.totalPages = other.totalPages;
+        this.freeByStart = new TreeMap<>(other.freeByStart);
+        this.freeBySize = new TreeSet<>(other.freeBySize);
+        this.freePages = other.freePages;
+    }
+
+    /**
+     * Allocates a range of pages
+     * @param numPages Number of pages needed
+     * @return The first page of the range, or -1 if no free extent is large enough
+     */
+    public int allocate(int numPages) {
+        return allocate(numPages, 1);
+    }
+
+    /**
+     * Allocates a range of pages starting at a multiple of alignment
+     * Picks the smallest free extent the range fits in
+     * @param numPages Number of pages needed
+     * @param alignment Required alignment of the first page, in pages
+     * @return The first page of the range, or -1 if no free extent is large enough
+     */
+    public int allocate(int numPages, int alignment) {
+        if (numPages <= 0 || alignment <= 0 || numPages > freePages) {
+            return -1;
+        }
+
+        // Any extent at least numPages + alignment - 1 long fits, so this stops quickly
+        for (Long key = freeBySize.ceiling(sizeKey(numPages, 0)); key != null; key = freeBySize.higher(key)) {
+            int length = (int) (key >>> 32);
+            int start = (int) (key & 0xFFFFFFFFL);
+            long extentEnd = (long) start + length;
+            long alignedStart = (start + alignment - 1L) / alignment * alignment;
+            long end = alignedStart + numPages;
+            if (end > extentEnd) {
+                continue;
+            }
+
+            // Carve the range out, giving back what is left on either side
+            remove(start, length);
+            if (alignedStart > start) {
+                insert(start, (int) (alignedStart - start));
+            }
+            if (end < extentEnd) {
+                insert((int) end, (int) (extentEnd - end));
+            }
+            freePages -= numPages;
+            return (int) alignedStart;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns a range of pages, merging it with adjacent free extents
+     * @param start The first page of the range
+     * @param numPages Number of pages
+     * @return true if successful, false if the range is out of bounds or partly free already
+     */
+    public boolean free(int start, int numPages) {
+        long end = (long) start + numPages;
+        if (start < 0 || numPages <= 0 || end > totalPages) {
+            return false;
+        }
+
+        Map.Entry<Integer, Integer> before = freeByStart.floorEntry(start);
+        Map.Entry<Integer, Integer> after = freeByStart.ceilingEntry(start);
+        if (before != null && (long) before.getKey() + before.getValue() > start) {
+            return false; // Overlaps the extent before it
+        }
+        if (after != null && after.getKey() < end) {
+            return false; // Overlaps the extent after it
+        }
+
+        // Coalesce with the neighbours it touches
+        int newStart = start;
+        if (before != null && before.getKey() + before.getValue() == start) {
+            remove(before.getKey(), before.getValue());
+            newStart = before.getKey();
+        }
+        if (after != null && after.getKey() == end) {
+            remove(after.getKey(), after.getValue());
+            end += after.getValue();
+        }
+        insert(newStart, (int) (end - newStart));
+        freePages += numPages;
+        return true;
+    }
+
+    /**
+     * Gets the number of free pages
+     * @return The free page count
+     */
+    public int getFreePages() {
+        return freePages;
+    }
+
+    /**
+     * Gets the number of pages managed
+     * @return The total page count
+     */
+    public int getTotalPages() {
+        return totalPages;
+    }
+
+    /**
+     * Gets the number of free extents (holes)
+     * @return The free extent count
+     */
+    public int getFreeExtentCount() {
+        return freeByStart.size();
+    }
+
+    /**
+     * Gets the length of the largest free extent
+     * @return The largest allocation that can currently succeed, in pages
+     */
+    public int getLargestFreeExtent() {
+        return freeBySize.isEmpty() ? 0 : (int) (freeBySize.last() >>> 32);
+    }
+
+    /**
+     * Gets the external fragmentation of the free space
+     * @return 0 when all free pages form one extent, approaching 1 as they scatter
+     */
+    public double getFragmentation() {
+        return freePages == 0 ? 0.0 : 1.0 - (double) getLargestFreeExtent() / freePages;
+    }
+
+    private void insert(int start, int length) {
+        freeByStart.put(start, length);
+        freeBySize.add(sizeKey(length, start));
+    }
+
+    private void remove(int start, int length) {
+        freeByStart.remove(start);
+        freeBySize.remove(sizeKey(length, start));
+    }
+
+    private static long sizeKey(int length, int start) {
+        return ((long) length << 32) | start;
+    }
+}
@@ -0,0 +1,59 @@
+package OperationSystem;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * VirtualThreadBackend - Runs every process on a Java virtual thread
+ * Parked processes don't hold a carrier thread, so 100k+ mostly blocked
+ * processes fit in one JVM. Needs a JDK with virtual threads (21+);
+ * it is looked up reflectively so the rest of the system still builds on older JDKs.
+ */
+public class VirtualThreadBackend implements ExecutionBackend {
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_UNSTARTED;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderUnstarted = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            builderName = builder.getMethod("name", String.class);
+            builderUnstarted = builder.getMethod("unstarted", Runnable.class);
+        } catch (ReflectiveOperationException e) {
+            // Not supported by this JDK
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_UNSTARTED = builderUnstarted;
+    }
+
+    public VirtualThreadBackend() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads are not available on Java "
+                    + System.getProperty("java.version"));
+        }
+    }
+
+    /**
+     * Checks if the running JDK supports virtual threads
+     * @return true if this backend can be used
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    @Override
+    public Thread newThread(Runnable body, String name) {
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, name);
+            return (Thread) BUILDER_UNSTARTED.invoke(builder, body);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Could not create virtual thread", e);
+        }
+    }
+}